@@ -22,6 +22,16 @@ public interface ActivationFunction extends Serializable {
 	 */
 	public double activationFunction(double d);
 
+	/**
+	 * The activation function at single precision.  By default this
+	 * calculates the double precision result and rounds it to a float.
+	 * @param d The input to the function.
+	 * @return The output from the function.
+	 */
+	public default float activationFunction(final float d) {
+		return (float) activationFunction((double) d);
+	}
+
 	/**
 	 * Performs the derivative of the activation function function on the input.
 	 * 
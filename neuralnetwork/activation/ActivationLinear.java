@@ -29,6 +29,16 @@ public class ActivationLinear implements ActivationFunction {
 		return d;
 	}
 
+	/**
+	 * The threshold function at single precision.
+	 * @param The input to the function.
+	 * @return The output from the function.
+	 */
+	@Override
+	public float activationFunction(final float d) {
+		return d;
+	}
+
 	/**
 	 * Some training methods require the derivative.
 	 * @param The input.
@@ -24,6 +24,17 @@ public class ActivationSigmoid implements ActivationFunction {
 	public double activationFunction(final double d) {
 		return 1.0 / (1 + BoundNumbers.exp(-1.0 * d));
 	}
+
+	/**
+	 * The threshold function at single precision, the arithmetic is done
+	 * in floats.
+	 * @param The input to the function.
+	 * @return The output from the function.
+	 */
+	@Override
+	public float activationFunction(final float d) {
+		return 1.0f / (1.0f + BoundNumbers.exp(-d));
+	}
 	
 	/**
 	 * Some training methods require the derivative.
@@ -28,6 +28,18 @@ public class ActivationTANH implements ActivationFunction {
 		final double result = (BoundNumbers.exp(d*2.0)-1.0)/(BoundNumbers.exp(d*2.0)+1.0);
 		return result;
 	}
+
+	/**
+	 * The threshold function at single precision, the arithmetic is done
+	 * in floats.
+	 * @param The input to the function.
+	 * @return The output from the function.
+	 */
+	@Override
+	public float activationFunction(final float d) {
+		final float e = BoundNumbers.exp(d * 2.0f);
+		return (e - 1.0f) / (e + 1.0f);
+	}
 	
 	/**
 	 * Some training methods require the derivative.
@@ -20,6 +20,10 @@ import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
  * the slow cooling gives them more chances of finding configurations 
  * with lower internal energy than the initial one.
  * 
+ * The best solution of an iteration is kept with saveBest and put back
+ * with restoreBest.  By default these use boxed copies from getArrayCopy,
+ * a subclass can override both to keep the solution some other way.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
@@ -47,6 +51,12 @@ abstract public class SimulatedAnnealing<UNIT_TYPE> {
 	 */
 	protected double temperature;
 
+	/**
+	 * The best solution found during the current iteration, kept by the
+	 * default saveBest.
+	 */
+	private UNIT_TYPE bestArray[];
+
 	/**
 	 * Subclasses should provide a method that evaluates the error for the
 	 * current solution. Those solutions with a lower error are better.
@@ -103,11 +113,9 @@ abstract public class SimulatedAnnealing<UNIT_TYPE> {
 	 * Called to perform one cycle of the annealing process.
 	 */
 	public void iteration() throws NeuralNetworkError {
-		UNIT_TYPE bestArray[];
-
 		setError(determineError());
-		bestArray = this.getArrayCopy();
-		
+		saveBest();
+
 		this.temperature = this.getStartTemperature();
 
 		for (int i = 0; i < this.cycles; i++) {
@@ -115,11 +123,11 @@ abstract public class SimulatedAnnealing<UNIT_TYPE> {
 			randomize();
 			curError = determineError();
 			if (curError < getError()) {
-				bestArray = this.getArrayCopy();
+				saveBest();
 				setError(curError);
 			}
 
-			this.putArray(bestArray);
+			restoreBest();
 			final double ratio = Math.exp(Math.log(getStopTemperature()
 					/ getStartTemperature())
 					/ (getCycles() - 1));
@@ -133,6 +141,20 @@ abstract public class SimulatedAnnealing<UNIT_TYPE> {
 
 	public abstract void randomize();
 
+	/**
+	 * Put the best solution found so far back as the current solution.
+	 */
+	protected void restoreBest() {
+		this.putArray(this.bestArray);
+	}
+
+	/**
+	 * Remember the current solution as the best one found so far.
+	 */
+	protected void saveBest() {
+		this.bestArray = this.getArrayCopy();
+	}
+
 	/**
 	 * @param cycles
 	 *            the cycles to set
@@ -0,0 +1,138 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.Precision;
+
+/**
+ * AllocationCheck: Checks that running a network, once it is warm,
+ * allocates no memory.  Each precision is run through both
+ * computeOutputs(double[]) and computeOutputs(double[], ExecutionContext)
+ * and the bytes allocated by the calling thread are counted with
+ * com.sun.management.ThreadMXBean.
+ *
+ * Run it from the command line, it exits with status 1 if any path
+ * allocates more than MAX_BYTES over CALLS calls, so a change that puts
+ * garbage back on the inference path is caught.  The allowance is there
+ * for the odd allocation made by the JVM itself, not by the network.
+ * The kernels in use are printed first, since the vector kernels and
+ * the scalar kernels should each be checked.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public final class AllocationCheck {
+
+	/**
+	 * The number of calls run before counting, so that the code is
+	 * compiled.
+	 */
+	public static final int WARMUP = 200000;
+
+	/**
+	 * The number of calls counted.
+	 */
+	public static final int CALLS = 100000;
+
+	/**
+	 * The most bytes the counted calls may allocate, in total.
+	 */
+	public static final long MAX_BYTES = 1024;
+
+	/**
+	 * Something to do with the outputs, so that the calls are not removed.
+	 */
+	private static double sink;
+
+	/**
+	 * Run the check.
+	 * @param args Not used.
+	 */
+	public static void main(final String args[]) {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("This JVM can't count the bytes a thread allocates.");
+			System.exit(2);
+		}
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM can't count the bytes a thread allocates.");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		System.out.println("kernels " + MatrixMath.getKernelName());
+
+		boolean passed = true;
+		for (final Precision precision : Precision.values()) {
+			final NeuralNetwork network = createNetwork(precision);
+			final double input[] = new double[network.getInputLayer()
+					.getNeuronCount()];
+			for (int i = 0; i < input.length; i++) {
+				input[i] = Math.sin(i);
+			}
+			final ExecutionContext context = network.createContext();
+
+			passed &= report(precision + " computeOutputs(double[])", count(
+					threads, () -> sink += network.computeOutputs(input)[0]));
+			passed &= report(precision
+					+ " computeOutputs(double[], ExecutionContext)", count(
+					threads,
+					() -> sink += network.computeOutputs(input, context)[0]));
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * Count the bytes allocated by warm calls.
+	 * @param threads Counts the allocations.
+	 * @param call The call to make.
+	 * @return The bytes allocated by CALLS calls, after WARMUP calls.
+	 */
+	private static long count(final com.sun.management.ThreadMXBean threads,
+			final Runnable call) {
+		for (int i = 0; i < WARMUP; i++) {
+			call.run();
+		}
+		final long thread = Thread.currentThread().threadId();
+		final long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < CALLS; i++) {
+			call.run();
+		}
+		return threads.getThreadAllocatedBytes(thread) - before;
+	}
+
+	/**
+	 * Create the network to check, with one hidden layer.
+	 * @param precision The precision of the weights.
+	 * @return The network, with seeded random weights.
+	 */
+	private static NeuralNetwork createNetwork(final Precision precision) {
+		final NeuralNetwork result = new NeuralNetwork();
+		result.addLayer(new NeuralLayer(64, precision));
+		result.addLayer(new NeuralLayer(128, precision));
+		result.addLayer(new NeuralLayer(10, precision));
+		result.reset(new SplittableRandom(1));
+		return result;
+	}
+
+	/**
+	 * Print the result of one check.
+	 * @param name What was checked.
+	 * @param bytes The bytes it allocated.
+	 * @return True if it is within MAX_BYTES.
+	 */
+	private static boolean report(final String name, final long bytes) {
+		final boolean passed = bytes <= MAX_BYTES;
+		System.out.println((passed ? "ok     " : "FAILED ") + name + ": "
+				+ bytes + " bytes in " + CALLS + " calls");
+		return passed;
+	}
+
+	/**
+	 * Not to be constructed.
+	 */
+	private AllocationCheck() {
+	}
+}
@@ -0,0 +1,293 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.aurora.ai.neuralnetwork.activation.ActivationFunction;
+import com.aurora.ai.neuralnetwork.activation.ActivationLinear;
+import com.aurora.ai.neuralnetwork.activation.ActivationSigmoid;
+import com.aurora.ai.neuralnetwork.activation.ActivationTANH;
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.Precision;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
+import com.aurora.ai.neuralnetwork.util.BoundNumbers;
+
+/**
+ * CompiledNetwork: A frozen copy of a trained neural network that can
+ * only compute outputs.  It is created by NeuralNetwork.compile().
+ *
+ * The layers of a NeuralNetwork are linked objects, each with its own
+ * weight matrix and activation function, which suits training.  A
+ * compiled network instead keeps the weights of every layer one after
+ * another in a single array, with a table of where each layer starts.
+ * The built in activation functions are applied by loops written for
+ * each one, rather than through the ActivationFunction interface.
+ * Other activation functions are still called through the interface.
+ *
+ * A compiled network can not be changed, so any number of threads may
+ * use it at once.  Changes made to the original network after it was
+ * compiled are not seen.  Single precision layers are stored at double
+ * precision, which holds their weights exactly, and their activation
+ * functions are still calculated at single precision.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public final class CompiledNetwork implements Serializable {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = 3853618624541373470L;
+
+	/**
+	 * An activation function that is called through its interface.
+	 */
+	private static final int OTHER = 0;
+
+	/**
+	 * The sigmoid activation function.
+	 */
+	private static final int SIGMOID = 1;
+
+	/**
+	 * The hyperbolic tangent activation function.
+	 */
+	private static final int TANH = 2;
+
+	/**
+	 * The linear activation function.
+	 */
+	private static final int LINEAR = 3;
+
+	/**
+	 * The weights and thresholds of every layer, each stored row-major
+	 * with the thresholds in the last row, one layer after another.
+	 */
+	private final double weights[];
+
+	/**
+	 * The number of neurons in each layer.
+	 */
+	private final int sizes[];
+
+	/**
+	 * Where the weights of each layer start in the weights array.
+	 */
+	private final int offsets[];
+
+	/**
+	 * Which activation function each layer uses, one of the constants.
+	 */
+	private final int kinds[];
+
+	/**
+	 * True for each layer that calculates its activation function at
+	 * single precision.
+	 */
+	private final boolean single[];
+
+	/**
+	 * The activation function of each layer, used for the OTHER kind.
+	 */
+	private final ActivationFunction activations[];
+
+	/**
+	 * Compile a network.  Use NeuralNetwork.compile() rather than calling
+	 * this directly.
+	 * @param network The network to compile.
+	 */
+	CompiledNetwork(final NeuralNetwork network) {
+		final List<NeuralLayer> layers = network.getLayers();
+		if (layers.isEmpty()) {
+			throw new NeuralNetworkError("Can't compile a network with no layers.");
+		}
+
+		final int count = layers.size();
+		this.sizes = new int[count];
+		this.offsets = new int[count - 1];
+		this.kinds = new int[count - 1];
+		this.single = new boolean[count - 1];
+		this.activations = new ActivationFunction[count - 1];
+
+		long length = 0;
+		for (int i = 0; i < count; i++) {
+			final NeuralLayer layer = layers.get(i);
+			this.sizes[i] = layer.getNeuronCount();
+			if (i < count - 1) {
+				if (layer.getMatrix() == null) {
+					throw new NeuralNetworkError("Can't compile layer " + i
+							+ " because it has no weight matrix.");
+				}
+				this.offsets[i] = (int) length;
+				length += layer.getMatrix().size();
+			}
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new NeuralNetworkError("Can't compile a network with "
+					+ length + " weights into one array.");
+		}
+
+		this.weights = new double[(int) length];
+		for (int i = 0; i < count - 1; i++) {
+			final NeuralLayer layer = layers.get(i);
+			layer.getMatrix().toPackedArray(this.weights, this.offsets[i]);
+			this.activations[i] = layer.getActivationFunction();
+			this.kinds[i] = kindOf(layer.getActivationFunction());
+			this.single[i] = layer.getPrecision() == Precision.FLOAT;
+		}
+	}
+
+	/**
+	 * Compute the output for a given input.
+	 * @param input The input, one value for each input neuron.
+	 * @return A new array holding the outputs.
+	 */
+	public double[] computeOutputs(final double input[]) {
+		final double result[] = new double[getOutputCount()];
+		computeOutputs(input, result);
+		return result;
+	}
+
+	/**
+	 * Compute the output for a given input into an array provided by the
+	 * caller.  Scratch space comes from the calling thread's workspace, so
+	 * nothing is allocated once a thread has run the network.
+	 * @param input The input, one value for each input neuron.
+	 * @param output Holds the outputs, one value for each output neuron.
+	 */
+	public void computeOutputs(final double input[], final double output[]) {
+		final int last = this.sizes.length - 1;
+		if (input.length != this.sizes[0]) {
+			throw new NeuralNetworkError(
+					"Size mismatch: Can't compute outputs for input size="
+							+ input.length + " for input layer size="
+							+ this.sizes[0]);
+		}
+		if (output.length < this.sizes[last]) {
+			throw new NeuralNetworkError("Size mismatch: Can't compute "
+					+ this.sizes[last] + " outputs into an array of "
+					+ output.length);
+		}
+
+		if (last == 0) {
+			System.arraycopy(input, 0, output, 0, input.length);
+			return;
+		}
+
+		final Workspace workspace = Workspace.current();
+		final int mark = workspace.mark();
+		try {
+			int largest = 0;
+			for (int i = 1; i < last; i++) {
+				largest = Math.max(largest, this.sizes[i]);
+			}
+			final double even[] = workspace.vector(largest);
+			final double odd[] = workspace.vector(largest);
+
+			double x[] = input;
+			for (int i = 0; i < last; i++) {
+				final double y[] = (i == last - 1) ? output
+						: ((i % 2 == 0) ? even : odd);
+				MatrixMath.multiplyTransposedVectorWithBias(this.weights,
+						this.offsets[i], this.sizes[i] + 1, this.sizes[i + 1], x,
+						y);
+				activate(i, y, this.sizes[i + 1]);
+				x = y;
+			}
+		} finally {
+			workspace.release(mark);
+		}
+	}
+
+	/**
+	 * Get the number of input neurons.
+	 * @return The number of inputs.
+	 */
+	public int getInputCount() {
+		return this.sizes[0];
+	}
+
+	/**
+	 * Get the number of layers, including the input and output layers.
+	 * @return The number of layers.
+	 */
+	public int getLayerCount() {
+		return this.sizes.length;
+	}
+
+	/**
+	 * Get the number of output neurons.
+	 * @return The number of outputs.
+	 */
+	public int getOutputCount() {
+		return this.sizes[this.sizes.length - 1];
+	}
+
+	/**
+	 * Get the total number of weights and thresholds.
+	 * @return The number of weights.
+	 */
+	public int getWeightCount() {
+		return this.weights.length;
+	}
+
+	/**
+	 * Apply the activation function of a layer to its sums in place.
+	 * @param layer The layer.
+	 * @param y The sums.
+	 * @param length The number of sums.
+	 */
+	private void activate(final int layer, final double y[], final int length) {
+		final ActivationFunction function = this.activations[layer];
+		if (this.single[layer]) {
+			// the built in functions have their own single precision forms
+			for (int i = 0; i < length; i++) {
+				y[i] = function.activationFunction((float) y[i]);
+			}
+			return;
+		}
+
+		switch (this.kinds[layer]) {
+		case SIGMOID:
+			for (int i = 0; i < length; i++) {
+				y[i] = 1.0 / (1 + BoundNumbers.exp(-1.0 * y[i]));
+			}
+			break;
+		case TANH:
+			for (int i = 0; i < length; i++) {
+				final double d = y[i];
+				y[i] = (BoundNumbers.exp(d * 2.0) - 1.0)
+						/ (BoundNumbers.exp(d * 2.0) + 1.0);
+			}
+			break;
+		case LINEAR:
+			break;
+		default:
+			for (int i = 0; i < length; i++) {
+				y[i] = function.activationFunction(y[i]);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Determine which of the built in activation functions is used.  Only
+	 * the classes themselves are recognised, a subclass may change how
+	 * the function is calculated.
+	 * @param function The activation function.
+	 * @return The kind of the function.
+	 */
+	private static int kindOf(final ActivationFunction function) {
+		if (function.getClass() == ActivationSigmoid.class) {
+			return SIGMOID;
+		} else if (function.getClass() == ActivationTANH.class) {
+			return TANH;
+		} else if (function.getClass() == ActivationLinear.class) {
+			return LINEAR;
+		} else {
+			return OTHER;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+/**
+ * ExecutionContext: Holds the outputs of every layer for one run of a
+ * neural network.  The weights of a network are only read when its
+ * outputs are computed, so one network can be shared by many threads
+ * as long as each thread computes into its own context.  This saves
+ * keeping a clone of the whole network for every thread.
+ *
+ * A context belongs to the network it was created for, and must only
+ * be used by one thread at a time.  It can be reused for any number of
+ * runs, and nothing is allocated when it is.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class ExecutionContext {
+
+	/**
+	 * The network this context was created for.
+	 */
+	final NeuralNetwork network;
+
+	/**
+	 * The outputs of each layer, in the same order as the layers of the
+	 * network.  The first holds a copy of the input.
+	 */
+	final double fire[][];
+
+	/**
+	 * Construct a context for a network.  Use
+	 * NeuralNetwork.createContext() rather than calling this directly.
+	 * @param network The network.
+	 */
+	ExecutionContext(final NeuralNetwork network) {
+		this.network = network;
+		this.fire = new double[network.getLayers().size()][];
+		int index = 0;
+		for (final NeuralLayer layer : network.getLayers()) {
+			this.fire[index++] = new double[layer.getNeuronCount()];
+		}
+	}
+
+	/**
+	 * Get the outputs of a layer from the last run.
+	 * @param layer The index of the layer, the input layer is zero.
+	 * @return The outputs of the layer.
+	 */
+	public double[] getFire(final int layer) {
+		return this.fire[layer];
+	}
+
+	/**
+	 * Get the network this context was created for.
+	 * @return The network.
+	 */
+	public NeuralNetwork getNetwork() {
+		return this.network;
+	}
+
+	/**
+	 * Get the outputs of the output layer from the last run.
+	 * @return The outputs of the network.
+	 */
+	public double[] getOutput() {
+		return this.fire[this.fire.length - 1];
+	}
+}
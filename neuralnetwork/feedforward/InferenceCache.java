@@ -0,0 +1,370 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+
+/**
+ * InferenceCache: Remembers the outputs of a neural network for recent
+ * inputs, so that an input that is seen again is answered by a lookup
+ * rather than by running the network.  Inputs must match exactly, value
+ * for value, to be found.
+ *
+ * The cache holds at most capacity entries.  When it is full the entry
+ * that was used least recently is removed.  The entries are spread over
+ * several segments, each with its own lock, so that many threads can use
+ * the cache at once.  Outputs that are not found are computed with the
+ * batch form of computeOutputs, which does not change the network.
+ *
+ * Whenever the weights of the network change, as reported by
+ * NeuralNetwork.getChangeCount(), the cached outputs are thrown away.
+ * Training and the built in weight changes report their changes.  Code
+ * that changes a weight matrix directly must call matrixChanged on the
+ * layer.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class InferenceCache {
+
+	/**
+	 * The most segments the entries are spread over.
+	 */
+	public static final int MAX_SEGMENTS = 16;
+
+	/**
+	 * Each segment holds at least this many entries, so that small caches
+	 * are not split into segments too small to be useful.
+	 */
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	/**
+	 * An input, used as a key.  The hash is calculated once, when the key
+	 * is made.
+	 */
+	private static final class Key {
+
+		/**
+		 * The input values.
+		 */
+		final double values[];
+
+		/**
+		 * The hash of the values.
+		 */
+		final int hash;
+
+		/**
+		 * Construct a key.
+		 * @param values The input values, not copied.
+		 */
+		Key(final double values[]) {
+			this.values = values;
+			this.hash = hash(values);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			return (other instanceof Key) && (((Key) other).hash == this.hash)
+					&& Arrays.equals(((Key) other).values, this.values);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * The outputs for an input, and the change count of the network when
+	 * they were computed.
+	 */
+	private static final class Entry {
+
+		/**
+		 * The outputs.
+		 */
+		final double outputs[];
+
+		/**
+		 * The change count of the network when the outputs were computed.
+		 */
+		final long changeCount;
+
+		/**
+		 * Construct an entry.
+		 * @param outputs The outputs.
+		 * @param changeCount The change count of the network.
+		 */
+		Entry(final double outputs[], final long changeCount) {
+			this.outputs = outputs;
+			this.changeCount = changeCount;
+		}
+	}
+
+	/**
+	 * A segment of the cache, a map kept in order of use.
+	 */
+	private final class Segment extends LinkedHashMap<Key, Entry> {
+
+		/**
+		 * Serial id for this class.
+		 */
+		private static final long serialVersionUID = 4218093315262474716L;
+
+		/**
+		 * The most entries this segment holds.
+		 */
+		private final int limit;
+
+		/**
+		 * Construct a segment.
+		 * @param limit The most entries this segment holds.
+		 */
+		Segment(final int limit) {
+			super(16, 0.75f, true);
+			this.limit = limit;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+			if (size() > this.limit) {
+				InferenceCache.this.evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Calculate the hash of an input.  Every bit of every value is mixed
+	 * in, so inputs that differ in any way are unlikely to collide.
+	 * @param values The input values.
+	 * @return The hash.
+	 */
+	static int hash(final double values[]) {
+		long result = values.length;
+		for (int i = 0; i < values.length; i++) {
+			result = (result + Double.doubleToLongBits(values[i]))
+					* 0x9E3779B97F4A7C15L;
+			result ^= result >>> 29;
+		}
+		return (int) (result ^ (result >>> 32));
+	}
+
+	/**
+	 * The network whose outputs are cached.
+	 */
+	private final NeuralNetwork network;
+
+	/**
+	 * The most entries the cache holds.
+	 */
+	private final int capacity;
+
+	/**
+	 * The segments, each guarded by its own lock.
+	 */
+	private final Segment segments[];
+
+	/**
+	 * The change count of the network the last time the cache was used.
+	 */
+	private volatile long changeCount;
+
+	/**
+	 * The number of inputs that were found.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * The number of inputs that were not found.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * The number of entries removed to make room.
+	 */
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Construct a cache.
+	 * @param network The network whose outputs are cached.
+	 * @param capacity The most entries to hold.
+	 */
+	public InferenceCache(final NeuralNetwork network, final int capacity) {
+		if (capacity < 1) {
+			throw new NeuralNetworkError("The cache capacity must be at least 1, not "
+					+ capacity + ".");
+		}
+		this.network = network;
+		this.capacity = capacity;
+		this.changeCount = network.getChangeCount();
+
+		int count = 1;
+		while ((count < MAX_SEGMENTS)
+				&& (capacity / (count * 2) >= MIN_SEGMENT_SIZE)) {
+			count *= 2;
+		}
+		this.segments = new InferenceCache.Segment[count];
+		for (int i = 0; i < count; i++) {
+			// spread the remainder so that the limits add up to capacity
+			this.segments[i] = new Segment((capacity / count)
+					+ ((i < capacity % count) ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Remove every entry.  The statistics are kept.
+	 */
+	public void clear() {
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Get the outputs of the network for an input, from the cache if they
+	 * are there, otherwise by running the network.
+	 * @param input The input pattern.
+	 * @return A new array holding the outputs.
+	 */
+	public double[] computeOutputs(final double input[]) {
+		final double result[] = new double[this.network.getOutputLayer()
+				.getNeuronCount()];
+		computeOutputs(input, result);
+		return result;
+	}
+
+	/**
+	 * Get the outputs of the network for an input into an array provided
+	 * by the caller, from the cache if they are there, otherwise by running
+	 * the network.
+	 * @param input The input pattern.
+	 * @param output Holds the outputs.
+	 */
+	public void computeOutputs(final double input[], final double output[]) {
+		final int outputCount = this.network.getOutputLayer().getNeuronCount();
+		if (output.length < outputCount) {
+			throw new NeuralNetworkError("Size mismatch: Can't compute "
+					+ outputCount + " outputs into an array of "
+					+ output.length);
+		}
+
+		final long current = checkChanges();
+		final Key key = new Key(input);
+		final Segment segment = segmentFor(key.hash);
+
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+		}
+		if ((entry != null) && (entry.changeCount == current)) {
+			this.hits.increment();
+			System.arraycopy(entry.outputs, 0, output, 0, entry.outputs.length);
+			return;
+		}
+
+		this.misses.increment();
+		final double outputs[] = new double[outputCount];
+		this.network.computeOutputs(input, outputs);
+		entry = new Entry(outputs, current);
+		synchronized (segment) {
+			segment.put(new Key(input.clone()), entry);
+		}
+		System.arraycopy(outputs, 0, output, 0, outputs.length);
+	}
+
+	/**
+	 * Get the most entries the cache holds.
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Get the number of entries removed to make room for new ones.
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * Get the fraction of lookups that were found.
+	 * @return The hit rate, between 0 and 1.
+	 */
+	public double getHitRate() {
+		final long hits = this.hits.sum();
+		final long total = hits + this.misses.sum();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Get the number of lookups that were found.
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Get the number of lookups that were not found.
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Get the network whose outputs are cached.
+	 * @return The network.
+	 */
+	public NeuralNetwork getNetwork() {
+		return this.network;
+	}
+
+	/**
+	 * Get the number of entries held.
+	 * @return The size.
+	 */
+	public int size() {
+		int result = 0;
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				result += segment.size();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Throw away the cached outputs if the network has changed since the
+	 * cache was last used.  Entries made by other threads while this
+	 * happens are recognised by their change count.
+	 * @return The current change count of the network.
+	 */
+	private long checkChanges() {
+		final long current = this.network.getChangeCount();
+		if (current != this.changeCount) {
+			this.changeCount = current;
+			clear();
+		}
+		return current;
+	}
+
+	/**
+	 * Choose the segment for a hash.
+	 * @param hash The hash of the key.
+	 * @return The segment.
+	 */
+	private Segment segmentFor(final int hash) {
+		return this.segments[(hash ^ (hash >>> 16)) & (this.segments.length - 1)];
+	}
+}
@@ -1,12 +1,18 @@
 package com.aurora.ai.neuralnetwork.feedforward;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.activation.ActivationFunction;
 import com.aurora.ai.neuralnetwork.activation.ActivationSigmoid;
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.matrix.Matrix;
 import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.Precision;
+import com.aurora.ai.neuralnetwork.matrix.SparseMatrix;
 
 /**
  * NeuralLayer: This class represents one layer in a 
@@ -19,6 +25,17 @@ import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
  * function.  By default this class uses the sigmoid activation
  * function.
  * 
+ * A layer can also be built at single precision.  Its weight matrix
+ * is then a FloatMatrix, which halves the memory it uses, and its
+ * outputs are calculated with the single precision activation function.
+ * 
+ * When most of the weights are zero, for example after pruning, the
+ * outputs are calculated from a compressed copy of the weight matrix
+ * that only holds the nonzero weights.  This copy is made when the
+ * density of the weights is below the sparse threshold.  If the weight
+ * matrix is changed directly, call matrixChanged so that the copy is
+ * not used out of date.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
@@ -28,6 +45,26 @@ public class NeuralLayer implements Serializable {
 	 */
 	private static final long serialVersionUID = -3698708039331150031L;
 
+	/**
+	 * The default sparse threshold.  Weight matrices with fewer than this
+	 * fraction of nonzero values are multiplied in sparse form.
+	 */
+	public static final double DEFAULT_SPARSE_THRESHOLD = 0.2;
+
+	/**
+	 * Atomic access to changeCount.
+	 */
+	private static final VarHandle CHANGE_COUNT;
+
+	static {
+		try {
+			CHANGE_COUNT = MethodHandles.lookup().findVarHandle(
+					NeuralLayer.class, "changeCount", long.class);
+		} catch (final ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
 	/**
 	 * Results from the last time that the outputs were calculated for this
 	 * layer.
@@ -54,6 +91,37 @@ public class NeuralLayer implements Serializable {
 	 */
 	private final ActivationFunction activationFunction;
 
+	/**
+	 * The precision of the weight matrix and the activation function.
+	 */
+	private final Precision precision;
+
+	/**
+	 * Weight matrices with a density below this are multiplied in sparse
+	 * form.
+	 */
+	private double sparseThreshold = DEFAULT_SPARSE_THRESHOLD;
+
+	/**
+	 * The sparse copy of the weight matrix, or null if the dense matrix
+	 * should be used.
+	 */
+	private transient SparseMatrix sparseMatrix;
+
+	/**
+	 * True if the density of the weight matrix has been checked since it
+	 * last changed.  This is volatile so that a thread that sees it set
+	 * also sees the sparse copy made by another thread.
+	 */
+	private transient volatile boolean densityChecked;
+
+	/**
+	 * The number of times the weight matrix has been changed.  Increased
+	 * through CHANGE_COUNT, so that changes reported by several threads at
+	 * once are all counted.
+	 */
+	private transient volatile long changeCount;
+
 	/**
 	 * Construct this layer with a non-default threshold function.
 	 * @param thresholdFunction The threshold function to use.
@@ -61,8 +129,21 @@ public class NeuralLayer implements Serializable {
 	 */
 	public NeuralLayer(final ActivationFunction thresholdFunction,
 			final int neuronCount) {
+		this(thresholdFunction, neuronCount, Precision.DOUBLE);
+	}
+
+	/**
+	 * Construct this layer with a non-default threshold function and
+	 * precision.
+	 * @param thresholdFunction The threshold function to use.
+	 * @param neuronCount How many neurons in this layer.
+	 * @param precision The precision of the weight matrix.
+	 */
+	public NeuralLayer(final ActivationFunction thresholdFunction,
+			final int neuronCount, final Precision precision) {
 		this.fire = new double[neuronCount];
 		this.activationFunction = thresholdFunction;
+		this.precision = precision;
 	}
 
 	/**
@@ -73,13 +154,35 @@ public class NeuralLayer implements Serializable {
 		this(new ActivationSigmoid(), neuronCount);
 	}
 
+	/**
+	 * Construct this layer with a sigmoid threshold function and the
+	 * specified precision.
+	 * @param neuronCount How many neurons in this layer.
+	 * @param precision The precision of the weight matrix.
+	 */
+	public NeuralLayer(final int neuronCount, final Precision precision) {
+		this(new ActivationSigmoid(), neuronCount, precision);
+	}
+
 	/**
 	 * Clone the structure of this layer, but do not copy any matrix data.
 	 * 
 	 * @return The cloned layer.
 	 */
 	public NeuralLayer cloneStructure() {
-		return new NeuralLayer(this.activationFunction,this.getNeuronCount());
+		return cloneStructure(this.precision);
+	}
+
+	/**
+	 * Clone the structure of this layer at a different precision, but do
+	 * not copy any matrix data.
+	 * 
+	 * @param precision The precision of the cloned layer.
+	 * @return The cloned layer.
+	 */
+	public NeuralLayer cloneStructure(final Precision precision) {
+		return new NeuralLayer(this.activationFunction, this.getNeuronCount(),
+				precision);
 	}
 
 	/**
@@ -89,44 +192,111 @@ public class NeuralLayer implements Serializable {
 	 * @return The output from this layer.
 	 */
 	public double[] computeOutputs(final double pattern[]) {
-		int i;
 		if (pattern != null) {
-			for (i = 0; i < getNeuronCount(); i++) {
-				setFire(i, pattern[i]);
-			}
+			System.arraycopy(pattern, 0, this.fire, 0, getNeuronCount());
 		}
 
-		final Matrix inputMatrix = createInputMatrix(this.fire);
+		computeOutputs(this.fire, this.next.fire);
+		return this.fire;
+	}
 
-		for (i = 0; i < this.next.getNeuronCount(); i++) {
-			final Matrix col = this.matrix.getCol(i);
-			final double sum = MatrixMath.dotProduct(col, inputMatrix);
+	/**
+	 * Compute the outputs for this layer into an array provided by the
+	 * caller.  Neither this layer nor the next one is changed, so any
+	 * number of threads may call this at once, each with its own arrays.
+	 * @param input The input to this layer, one value for each neuron.
+	 * @param output Holds the outputs, one value for each neuron in the
+	 * next layer.
+	 */
+	public void computeOutputs(final double input[], final double output[]) {
+		if (!this.densityChecked) {
+			checkDensity();
+		}
 
-			this.next.setFire(i, this.activationFunction.activationFunction(sum));
+		// each sum is the dot product of the input and one column of the
+		// weight matrix, computed a row of weights at a time.  The last row
+		// holds the thresholds, which are added as if the input ended with
+		// a one.
+		final SparseMatrix sparse = this.sparseMatrix;
+		if (sparse != null) {
+			MatrixMath.multiplyTransposedVectorWithBias(sparse, input, output);
+		} else {
+			MatrixMath.multiplyTransposedVectorWithBias(this.matrix, input,
+					output);
 		}
 
-		return this.fire;
+		final int count = this.next.getNeuronCount();
+		if (this.precision == Precision.FLOAT) {
+			for (int i = 0; i < count; i++) {
+				output[i] = this.activationFunction
+						.activationFunction((float) output[i]);
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				output[i] = this.activationFunction.activationFunction(output[i]);
+			}
+		}
 	}
 
 	/**
-	 * Take a simple double array and turn it into a matrix that can be used to
-	 * calculate the results of the input array. Also takes into account the
-	 * threshold.
-	 * 
-	 * @param pattern
-	 * @return A matrix that represents the input pattern.
+	 * Compute the outputs for this layer for a batch of input patterns.
+	 * The whole batch is multiplied by the weight matrix at once, in
+	 * sparse form if the weights are sparse enough.  Unlike
+	 * computeOutputs(double[]) the fire arrays are not changed.
+	 * @param input The input patterns, stored one after another.
+	 * @param output Holds the outputs, stored one after another, each with
+	 * one value for each neuron in the next layer.
+	 * @param count The number of patterns.
 	 */
-	private Matrix createInputMatrix(final double pattern[]) {
-		final Matrix result = new Matrix(1, pattern.length + 1);
-		for (int i = 0; i < pattern.length; i++) {
-			result.set(0, i, pattern[i]);
+	public void computeOutputs(final double input[], final double output[],
+			final int count) {
+		if (!this.densityChecked) {
+			checkDensity();
+		}
+
+		final SparseMatrix sparse = this.sparseMatrix;
+		if (sparse != null) {
+			MatrixMath.multiplyTransposedWithBias(sparse, input, output, count);
+		} else {
+			MatrixMath.multiplyTransposedWithBias(this.matrix, input, output,
+					count);
+		}
+
+		final int size = count * this.next.getNeuronCount();
+		if (this.precision == Precision.FLOAT) {
+			for (int i = 0; i < size; i++) {
+				output[i] = this.activationFunction
+						.activationFunction((float) output[i]);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				output[i] = this.activationFunction.activationFunction(output[i]);
+			}
 		}
+	}
 
-		// add a "fake" first column to the input so that the threshold is
-		// always multiplied by one, resulting in it just being added.
-		result.set(0, pattern.length, 1);
+	/**
+	 * Decide whether the weight matrix should be multiplied in sparse
+	 * form, and make the sparse copy if it should.
+	 */
+	private void checkDensity() {
+		if ((this.matrix != null)
+				&& (SparseMatrix.density(this.matrix) < this.sparseThreshold)) {
+			this.sparseMatrix = new SparseMatrix(this.matrix);
+		} else {
+			this.sparseMatrix = null;
+		}
+		this.densityChecked = true;
+	}
 
-		return result;
+	/**
+	 * Get the number of times the weight matrix has been changed, as
+	 * reported to matrixChanged.
+	 * 
+	 * @return The change count.
+	 */
+	public long getChangeCount() {
+		return this.changeCount;
 	}
 
 	/**
@@ -176,6 +346,14 @@ public class NeuralLayer implements Serializable {
 		return this.fire.length;
 	}
 
+	/**
+	 * Get the precision of the weight matrix and the activation function.
+	 * @return The precision.
+	 */
+	public Precision getPrecision() {
+		return this.precision;
+	}
+
 	/**
 	 * @return the next layer.
 	 */
@@ -190,6 +368,15 @@ public class NeuralLayer implements Serializable {
 		return this.previous;
 	}
 
+	/**
+	 * Get the sparse threshold.
+	 * @return Weight matrices with a density below this are multiplied in
+	 *         sparse form.
+	 */
+	public double getSparseThreshold() {
+		return this.sparseThreshold;
+	}
+
 	/**
 	 * Determine if this layer has a matrix.
 	 * @return True if this layer has a matrix.
@@ -222,6 +409,18 @@ public class NeuralLayer implements Serializable {
 		return (this.next == null);
 	}
 
+	/**
+	 * Notify this layer that its weight matrix has been changed in place.
+	 * The density of the weights will be checked again the next time the
+	 * outputs are computed, and the change count is increased so that
+	 * cached outputs are no longer used.
+	 */
+	public void matrixChanged() {
+		this.sparseMatrix = null;
+		this.densityChecked = false;
+		CHANGE_COUNT.getAndAdd(this, 1L);
+	}
+
 	/**
 	 * Prune one of the neurons from this layer. Remove all entries in this
 	 * weight matrix and other layers.
@@ -251,10 +450,19 @@ public class NeuralLayer implements Serializable {
 	 * and 1.
 	 */
 	public void reset() {
+		reset(ThreadLocalRandom.current());
+	}
 
-		if (this.matrix != null) {
-			this.matrix.ramdomize(-1, 1);
+	/**
+	 * Reset the weight matrix and threshold values to random numbers between -1
+	 * and 1, using the specified generator.
+	 * @param random The random number generator to use.
+	 */
+	public void reset(final RandomGenerator random) {
 
+		if (this.matrix != null) {
+			this.matrix.ramdomize(-1, 1, random);
+			matrixChanged();
 		}
 
 	}
@@ -277,11 +485,12 @@ public class NeuralLayer implements Serializable {
 			throw new NeuralNetworkError(
 					"Weight matrix includes threshold values, and must have at least 2 rows.");
 		}
-		if (matrix != null) {
+		// keep the existing fire array if the neuron count is unchanged
+		if ((matrix != null) && (this.fire.length != matrix.getRows() - 1)) {
 			this.fire = new double[matrix.getRows() - 1];
 		}
 		this.matrix = matrix;
-
+		matrixChanged();
 	}
 
 	/**
@@ -291,8 +500,9 @@ public class NeuralLayer implements Serializable {
 	public void setNext(final NeuralLayer next) {
 		this.next = next;
 		// add one to the neuron count to provide a threshold value in row 0
-		this.matrix = new Matrix(this.getNeuronCount() + 1, next
-				.getNeuronCount());
+		this.matrix = this.precision.createMatrix(this.getNeuronCount() + 1,
+				next.getNeuronCount());
+		matrixChanged();
 	}
 
 	/**
@@ -303,6 +513,17 @@ public class NeuralLayer implements Serializable {
 		this.previous = previous;
 	}
 
+	/**
+	 * Set the sparse threshold.  Use zero to always multiply the dense
+	 * weight matrix.
+	 * @param sparseThreshold Weight matrices with a density below this
+	 *            are multiplied in sparse form.
+	 */
+	public void setSparseThreshold(final double sparseThreshold) {
+		this.sparseThreshold = sparseThreshold;
+		matrixChanged();
+	}
+
 	/**
 	 * Produce a string form of the layer.
 	 */
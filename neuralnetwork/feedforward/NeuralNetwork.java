@@ -5,9 +5,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.matrix.MatrixCODEC;
+import com.aurora.ai.neuralnetwork.matrix.Precision;
+import com.aurora.ai.neuralnetwork.matrix.RowTask;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
 import com.aurora.ai.neuralnetwork.util.ErrorCalculation;
 
 /**
@@ -29,6 +35,12 @@ public class NeuralNetwork implements Serializable {
 	 * Serial id for this class.
 	 */
 	private static final long serialVersionUID = -136440631687066461L;
+
+	/**
+	 * The number of patterns that are run through the layers together by
+	 * the batch versions of computeOutputs.
+	 */
+	public static final int BATCH_SIZE = 256;
 	
 	/**
 	 * The input layer.
@@ -121,7 +133,7 @@ public class NeuralNetwork implements Serializable {
 	@Override
 	public Object clone() {
 		final NeuralNetwork result = cloneStructure();
-		final Double copy[] = MatrixCODEC.networkToArray(this);
+		final double copy[] = MatrixCODEC.networkToArray(this, null);
 		MatrixCODEC.arrayToNetwork(copy, result);
 		return result;
 	}
@@ -137,16 +149,71 @@ public class NeuralNetwork implements Serializable {
 
 		for (final NeuralLayer layer : this.layers) {
 			final NeuralLayer clonedLayer = new NeuralLayer(layer
-					.getNeuronCount());
+					.getNeuronCount(), layer.getPrecision());
 			result.addLayer(clonedLayer);
 		}
 
 		return result;
 	}
 
+	/**
+	 * Return a copy of this neural network with every layer at the
+	 * specified precision.  A network can be trained at double precision
+	 * and then converted to single precision to halve the memory its
+	 * weights use.
+	 * 
+	 * @param precision
+	 *            The precision of the copy.
+	 * @return The converted copy of the neural network.
+	 */
+	public NeuralNetwork convert(final Precision precision) {
+		final NeuralNetwork result = new NeuralNetwork();
+
+		for (final NeuralLayer layer : this.layers) {
+			result.addLayer(layer.cloneStructure(precision));
+		}
+
+		final double copy[] = MatrixCODEC.networkToArray(this, null);
+		MatrixCODEC.arrayToNetwork(copy, result);
+		return result;
+	}
+
+	/**
+	 * Compile this network into a frozen copy that can only compute
+	 * outputs.  The compiled copy keeps all of the weights in one array
+	 * and can be shared between threads.  Later changes to this network,
+	 * for example further training, are not seen by the copy.
+	 * 
+	 * @return The compiled network.
+	 */
+	public CompiledNetwork compile() {
+		return new CompiledNetwork(this);
+	}
+
+	/**
+	 * Quantize this network into a copy whose weights are stored as 8 bit
+	 * integers, an eighth of their size at double precision.  The outputs
+	 * of the copy are close to, but not the same as, those of this network.
+	 * Use QuantizedNetwork.compare to measure the difference.
+	 * 
+	 * @return The quantized network.
+	 */
+	public QuantizedNetwork quantize() {
+		return new QuantizedNetwork(this);
+	}
+
 	/**
 	 * Compute the output for a given input to the neural network.
 	 * 
+	 * Once the network has been run, running it again allocates no
+	 * memory.  Each layer writes into arrays it already owns, and the
+	 * array returned is the output layer's fire array, so it is
+	 * overwritten by the next call.  Copy it if it has to be kept.
+	 * 
+	 * The outputs are kept in the layers, so only one thread at a time
+	 * may call this.  To share the network between threads use
+	 * computeOutputs(double[], ExecutionContext).
+	 * 
 	 * @param input
 	 *            The input provide to the neural network.
 	 * @return The results from the output neurons.
@@ -162,7 +229,11 @@ public class NeuralNetwork implements Serializable {
 							+ this.inputLayer.getNeuronCount());
 		}
 
-		for (final NeuralLayer layer : this.layers) {
+		// index the layers, rather than iterate, so that no iterator is
+		// created for each call
+		final int count = this.layers.size();
+		for (int i = 0; i < count; i++) {
+			final NeuralLayer layer = this.layers.get(i);
 			if (layer.isInput()) {
 				layer.computeOutputs(input);
 			} else if (layer.isHidden()) {
@@ -173,6 +244,228 @@ public class NeuralNetwork implements Serializable {
 		return this.outputLayer.getFire();
 	}
 
+	/**
+	 * Compute the output for a given input, keeping the output of every
+	 * layer in a context rather than in the layers.  The network is not
+	 * changed, so any number of threads can use it at once, as long as
+	 * each has its own context.
+	 * 
+	 * @param input
+	 *            The input provide to the neural network.
+	 * @param context
+	 *            The context to compute in, created by createContext().
+	 * @return The results from the output neurons, this is the output
+	 *         array of the context and is overwritten by its next run.
+	 * @throws NeuralNetworkException A neural network error occurred.
+	 */
+	public double[] computeOutputs(final double input[],
+			final ExecutionContext context) {
+		if ((context.network != this)
+				|| (context.fire.length != this.layers.size())) {
+			throw new NeuralNetworkError(
+					"The execution context was not created for this network, or the network has changed since.");
+		}
+
+		if (input.length != this.inputLayer.getNeuronCount()) {
+			throw new NeuralNetworkError(
+					"Size mismatch: Can't compute outputs for input size="
+							+ input.length + " for input layer size="
+							+ this.inputLayer.getNeuronCount());
+		}
+
+		final double fire[][] = context.fire;
+		System.arraycopy(input, 0, fire[0], 0, input.length);
+		final int count = this.layers.size();
+		for (int i = 0; i < count - 1; i++) {
+			this.layers.get(i).computeOutputs(fire[i], fire[i + 1]);
+		}
+
+		return context.getOutput();
+	}
+
+	/**
+	 * Create a context that holds the outputs of every layer, so that
+	 * this network can be run by several threads at once.  Each thread
+	 * needs its own context.
+	 * 
+	 * @return The new context.
+	 */
+	public ExecutionContext createContext() {
+		return new ExecutionContext(this);
+	}
+
+	public void computeOutputs(final double input[][], final double output[][]) {
+		computeOutputs(input, output, null);
+	}
+
+	/**
+	 * Compute the outputs for a batch of inputs.  The patterns are run
+	 * through the layers in blocks, each layer processing a whole block as
+	 * one matrix multiplication, which is much faster than computing the
+	 * outputs one input at a time.  If a pool is provided the blocks are
+	 * split across it.  Each thread works in its own workspace, and the
+	 * weights are shared, so the network is not changed.
+	 * 
+	 * @param input
+	 *            The inputs, one row for each pattern.
+	 * @param output
+	 *            Holds the results, one row for each pattern.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @throws NeuralNetworkException A neural network error occurred.
+	 */
+	public void computeOutputs(final double input[][], final double output[][],
+			final ForkJoinPool pool) {
+		final int inputCount = this.inputLayer.getNeuronCount();
+		final int outputCount = this.outputLayer.getNeuronCount();
+		if (output.length < input.length) {
+			throw new NeuralNetworkError("Size mismatch: Can't compute "
+					+ input.length + " outputs into " + output.length
+					+ " rows.");
+		}
+		for (int i = 0; i < input.length; i++) {
+			if (input[i].length != inputCount) {
+				throw new NeuralNetworkError(
+						"Size mismatch: Can't compute outputs for input size="
+								+ input[i].length + " for input layer size="
+								+ inputCount);
+			}
+			if (output[i].length < outputCount) {
+				throw new NeuralNetworkError("Size mismatch: Can't compute "
+						+ outputCount + " outputs into a row of "
+						+ output[i].length);
+			}
+		}
+
+		// each pattern costs about one multiply-add for each weight
+		RowTask.run(pool, input.length, getWeightMatrixSize(), BATCH_SIZE,
+				(start, end) -> {
+			// every block uses buffers sized for the largest block, so that
+			// the workspace can reuse them for a shorter last block
+			final int capacity = Math.min(BATCH_SIZE, end - start);
+			final Workspace workspace = Workspace.current();
+			final int mark = workspace.mark();
+			try {
+				final double packedInput[] = workspace.vector(capacity
+						* inputCount);
+				final double packedOutput[] = workspace.vector(capacity
+						* outputCount);
+				for (int block = start; block < end; block += BATCH_SIZE) {
+					final int count = Math.min(BATCH_SIZE, end - block);
+					for (int i = 0; i < count; i++) {
+						System.arraycopy(input[block + i], 0, packedInput, i
+								* inputCount, inputCount);
+					}
+					computeBlock(packedInput, packedOutput, count, capacity);
+					for (int i = 0; i < count; i++) {
+						System.arraycopy(packedOutput, i * outputCount,
+								output[block + i], 0, outputCount);
+					}
+				}
+			} finally {
+				workspace.release(mark);
+			}
+		});
+	}
+
+	public void computeOutputs(final double input[], final double output[]) {
+		computeOutputs(input, output, null);
+	}
+
+	/**
+	 * Compute the outputs for a batch of inputs that are stored one after
+	 * another in a single array.  The patterns are run through the layers
+	 * in blocks, each layer processing a whole block as one matrix
+	 * multiplication.  If a pool is provided the blocks are split across
+	 * it, and each thread writes its results straight into the output.
+	 * 
+	 * @param input
+	 *            The inputs, one pattern after another.
+	 * @param output
+	 *            Holds the results, one pattern after another.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @throws NeuralNetworkException A neural network error occurred.
+	 */
+	public void computeOutputs(final double input[], final double output[],
+			final ForkJoinPool pool) {
+		final int inputCount = this.inputLayer.getNeuronCount();
+		final int outputCount = this.outputLayer.getNeuronCount();
+		if ((inputCount == 0) || (input.length % inputCount != 0)) {
+			throw new NeuralNetworkError(
+					"Size mismatch: Can't compute outputs for input size="
+							+ input.length + " for input layer size="
+							+ inputCount);
+		}
+		final int total = input.length / inputCount;
+		if (output.length < (long) total * outputCount) {
+			throw new NeuralNetworkError("Size mismatch: Can't compute "
+					+ total + " outputs of size " + outputCount
+					+ " into an array of " + output.length);
+		}
+
+		// each pattern costs about one multiply-add for each weight
+		RowTask.run(pool, total, getWeightMatrixSize(), BATCH_SIZE,
+				(start, end) -> {
+			final int capacity = Math.min(BATCH_SIZE, end - start);
+			final Workspace workspace = Workspace.current();
+			final int mark = workspace.mark();
+			try {
+				final double packedInput[] = workspace.vector(capacity
+						* inputCount);
+				final double packedOutput[] = workspace.vector(capacity
+						* outputCount);
+				for (int block = start; block < end; block += BATCH_SIZE) {
+					final int count = Math.min(BATCH_SIZE, end - block);
+					System.arraycopy(input, block * inputCount, packedInput, 0,
+							count * inputCount);
+					computeBlock(packedInput, packedOutput, count, capacity);
+					System.arraycopy(packedOutput, 0, output, block
+							* outputCount, count * outputCount);
+				}
+			} finally {
+				workspace.release(mark);
+			}
+		});
+	}
+
+	/**
+	 * Run a block of patterns through the layers.  The outputs of the
+	 * hidden layers are kept in the calling thread's workspace.
+	 * 
+	 * @param input
+	 *            The inputs, one pattern after another.
+	 * @param output
+	 *            Holds the results, one pattern after another.
+	 * @param count
+	 *            The number of patterns.
+	 * @param capacity
+	 *            The number of patterns to size the hidden layer outputs
+	 *            for, so that the same buffers serve blocks of any size up
+	 *            to this.
+	 */
+	private void computeBlock(final double input[], final double output[],
+			final int count, final int capacity) {
+		final Workspace workspace = Workspace.current();
+		final int mark = workspace.mark();
+		try {
+			double current[] = input;
+			final int layerCount = this.layers.size();
+			for (int i = 0; i < layerCount; i++) {
+				final NeuralLayer layer = this.layers.get(i);
+				if (layer.isInput() || layer.isHidden()) {
+					final NeuralLayer next = layer.getNext();
+					final double result[] = next.isOutput() ? output
+							: workspace.vector(capacity * next.getNeuronCount());
+					layer.computeOutputs(current, result, count);
+					current = result;
+				}
+			}
+		} finally {
+			workspace.release(mark);
+		}
+	}
+
 	/**
 	 * Compare the two neural networks. For them to be equal they must be of the
 	 * same structure, and have the same matrix values.
@@ -213,6 +506,21 @@ public class NeuralNetwork implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Get a number that changes whenever the weights of this network are
+	 * changed, or a layer is added.  Anything that caches the outputs of
+	 * the network can compare it to tell if the cache is out of date.
+	 * 
+	 * @return The change count.
+	 */
+	public long getChangeCount() {
+		long result = 0;
+		for (int i = 0; i < this.layers.size(); i++) {
+			result += this.layers.get(i).getChangeCount();
+		}
+		return result;
+	}
+
 	/**
 	 * Get the count for how many hidden layers are present.
 	 * @return The hidden layer count.
@@ -277,8 +585,19 @@ public class NeuralNetwork implements Serializable {
 	 * @throws MatrixException
 	 */
 	public void reset() {
+		reset(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Reset the weight matrix and the thresholds using the specified
+	 * generator.  A seeded generator always produces the same network.
+	 * 
+	 * @param random
+	 *            The random number generator to use.
+	 */
+	public void reset(final RandomGenerator random) {
 		for (final NeuralLayer layer : this.layers) {
-			layer.reset();
+			layer.reset(random);
 		}
 	}
 }
\ No newline at end of file
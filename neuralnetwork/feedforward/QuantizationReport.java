@@ -0,0 +1,116 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+/**
+ * QuantizationReport: How much the outputs of a quantized network differ
+ * from those of the network it was made from, over a set of inputs.  It
+ * is produced by QuantizedNetwork.compare.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class QuantizationReport {
+
+	/**
+	 * The number of patterns compared.
+	 */
+	private final int patterns;
+
+	/**
+	 * The largest difference of any output.
+	 */
+	private final double maxError;
+
+	/**
+	 * The mean of the absolute differences of the outputs.
+	 */
+	private final double meanError;
+
+	/**
+	 * The root mean square of the differences of the outputs.
+	 */
+	private final double rmsError;
+
+	/**
+	 * The fraction of patterns where both networks gave their largest
+	 * output on the same neuron.
+	 */
+	private final double agreement;
+
+	/**
+	 * Construct a report.
+	 * @param patterns The number of patterns compared.
+	 * @param maxError The largest difference of any output.
+	 * @param meanError The mean absolute difference.
+	 * @param rmsError The root mean square difference.
+	 * @param agreement The fraction of patterns with the same largest
+	 * output.
+	 */
+	QuantizationReport(final int patterns, final double maxError,
+			final double meanError, final double rmsError,
+			final double agreement) {
+		this.patterns = patterns;
+		this.maxError = maxError;
+		this.meanError = meanError;
+		this.rmsError = rmsError;
+		this.agreement = agreement;
+	}
+
+	/**
+	 * Get the fraction of patterns where both networks gave their largest
+	 * output on the same neuron.  For a classifier this is how often the
+	 * two agree on the class.
+	 * @return The agreement, between 0 and 1.
+	 */
+	public double getAgreement() {
+		return this.agreement;
+	}
+
+	/**
+	 * Get the largest difference of any output.
+	 * @return The largest error.
+	 */
+	public double getMaxError() {
+		return this.maxError;
+	}
+
+	/**
+	 * Get the mean of the absolute differences of the outputs.
+	 * @return The mean error.
+	 */
+	public double getMeanError() {
+		return this.meanError;
+	}
+
+	/**
+	 * Get the number of patterns compared.
+	 * @return The number of patterns.
+	 */
+	public int getPatterns() {
+		return this.patterns;
+	}
+
+	/**
+	 * Get the root mean square of the differences of the outputs.
+	 * @return The RMS error.
+	 */
+	public double getRmsError() {
+		return this.rmsError;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder();
+		result.append("[QuantizationReport: Patterns=");
+		result.append(this.patterns);
+		result.append(", Max Error=");
+		result.append(this.maxError);
+		result.append(", Mean Error=");
+		result.append(this.meanError);
+		result.append(", RMS Error=");
+		result.append(this.rmsError);
+		result.append(", Agreement=");
+		result.append(this.agreement);
+		result.append("]");
+		return result.toString();
+	}
+}
@@ -0,0 +1,367 @@
+package com.aurora.ai.neuralnetwork.feedforward;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.aurora.ai.neuralnetwork.activation.ActivationFunction;
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+import com.aurora.ai.neuralnetwork.matrix.Matrix;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
+
+/**
+ * QuantizedNetwork: A copy of a trained neural network with its weights
+ * stored as 8 bit integers.  It is created by NeuralNetwork.quantize(),
+ * and takes an eighth of the memory of the original weights.
+ *
+ * Each neuron has its own scale, so a weight w feeding neuron j is
+ * stored as round(w / scale[j]), where scale[j] is the largest weight
+ * feeding that neuron divided by 127.  The thresholds are kept at full
+ * precision.
+ *
+ * When the outputs are computed the input to each layer is also scaled
+ * to 8 bit integers, by its own largest value.  The products of the two
+ * are added up as integers, and each sum is then scaled back and has
+ * its threshold added before the activation function is applied.
+ *
+ * The outputs differ slightly from those of the original network.  Use
+ * compare to measure by how much on a set of typical inputs.  A
+ * quantized network can not be changed, so any number of threads may
+ * use it at once.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public final class QuantizedNetwork implements Serializable {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = -6059532613771101574L;
+
+	/**
+	 * The largest magnitude of a quantized value.
+	 */
+	private static final int LEVELS = 127;
+
+	/**
+	 * The most inputs a neuron can have before its integer sum could
+	 * overflow.
+	 */
+	private static final int MAX_INPUTS = Integer.MAX_VALUE / (LEVELS * LEVELS);
+
+	/**
+	 * The quantized weights of every layer, one layer after another.
+	 * Within a layer the weights feeding each neuron are stored together.
+	 */
+	private final byte weights[];
+
+	/**
+	 * The scale of the weights feeding each neuron, for every layer after
+	 * the input layer, one layer after another.
+	 */
+	private final double scales[];
+
+	/**
+	 * The threshold of each neuron, stored like scales.
+	 */
+	private final double thresholds[];
+
+	/**
+	 * The number of neurons in each layer.
+	 */
+	private final int sizes[];
+
+	/**
+	 * Where the weights of each layer start in the weights array.
+	 */
+	private final int weightOffsets[];
+
+	/**
+	 * Where the scales and thresholds of each layer start.
+	 */
+	private final int neuronOffsets[];
+
+	/**
+	 * The activation function of each layer.
+	 */
+	private final ActivationFunction activations[];
+
+	/**
+	 * Quantize a network.  Use NeuralNetwork.quantize() rather than
+	 * calling this directly.
+	 * @param network The network to quantize.
+	 */
+	QuantizedNetwork(final NeuralNetwork network) {
+		final List<NeuralLayer> layers = network.getLayers();
+		if (layers.isEmpty()) {
+			throw new NeuralNetworkError("Can't quantize a network with no layers.");
+		}
+
+		final int count = layers.size();
+		this.sizes = new int[count];
+		this.weightOffsets = new int[count - 1];
+		this.neuronOffsets = new int[count - 1];
+		this.activations = new ActivationFunction[count - 1];
+
+		long weightCount = 0;
+		int neuronCount = 0;
+		for (int i = 0; i < count; i++) {
+			final NeuralLayer layer = layers.get(i);
+			this.sizes[i] = layer.getNeuronCount();
+			if (i < count - 1) {
+				if (layer.getMatrix() == null) {
+					throw new NeuralNetworkError("Can't quantize layer " + i
+							+ " because it has no weight matrix.");
+				}
+				if (layer.getNeuronCount() > MAX_INPUTS) {
+					throw new NeuralNetworkError("Can't quantize layer " + i
+							+ ", it has more than " + MAX_INPUTS + " neurons.");
+				}
+				this.weightOffsets[i] = (int) weightCount;
+				this.neuronOffsets[i] = neuronCount;
+				weightCount += (long) layer.getNeuronCount()
+						* layer.getNext().getNeuronCount();
+				neuronCount += layer.getNext().getNeuronCount();
+			}
+		}
+		if (weightCount > Integer.MAX_VALUE) {
+			throw new NeuralNetworkError("Can't quantize a network with "
+					+ weightCount + " weights into one array.");
+		}
+
+		this.weights = new byte[(int) weightCount];
+		this.scales = new double[neuronCount];
+		this.thresholds = new double[neuronCount];
+		for (int i = 0; i < count - 1; i++) {
+			quantize(i, layers.get(i).getMatrix());
+			this.activations[i] = layers.get(i).getActivationFunction();
+		}
+	}
+
+	/**
+	 * Compare the outputs of this network with those of another, usually
+	 * the network it was quantized from, over a set of inputs.
+	 * @param network The network to compare with.
+	 * @param input The inputs, one row for each pattern.
+	 * @return The differences between the outputs.
+	 */
+	public QuantizationReport compare(final NeuralNetwork network,
+			final double input[][]) {
+		final int outputCount = getOutputCount();
+		if (network.getOutputLayer().getNeuronCount() != outputCount) {
+			throw new NeuralNetworkError(
+					"Can't compare networks with different numbers of outputs.");
+		}
+
+		final double expected[][] = new double[input.length][outputCount];
+		network.computeOutputs(input, expected);
+
+		final double actual[] = new double[outputCount];
+		double maxError = 0;
+		double sumError = 0;
+		double sumSquared = 0;
+		int matching = 0;
+		for (int i = 0; i < input.length; i++) {
+			computeOutputs(input[i], actual);
+			for (int j = 0; j < outputCount; j++) {
+				final double error = Math.abs(actual[j] - expected[i][j]);
+				maxError = Math.max(maxError, error);
+				sumError += error;
+				sumSquared += error * error;
+			}
+			if (largest(actual) == largest(expected[i])) {
+				matching++;
+			}
+		}
+
+		final long values = (long) input.length * outputCount;
+		return new QuantizationReport(input.length, maxError,
+				(values == 0) ? 0 : sumError / values, (values == 0) ? 0
+						: Math.sqrt(sumSquared / values),
+				(input.length == 0) ? 1 : (double) matching / input.length);
+	}
+
+	/**
+	 * Compute the output for a given input.
+	 * @param input The input, one value for each input neuron.
+	 * @return A new array holding the outputs.
+	 */
+	public double[] computeOutputs(final double input[]) {
+		final double result[] = new double[getOutputCount()];
+		computeOutputs(input, result);
+		return result;
+	}
+
+	/**
+	 * Compute the output for a given input into an array provided by the
+	 * caller.  Scratch space comes from the calling thread's workspace, so
+	 * nothing is allocated once a thread has run the network.
+	 * @param input The input, one value for each input neuron.
+	 * @param output Holds the outputs, one value for each output neuron.
+	 */
+	public void computeOutputs(final double input[], final double output[]) {
+		final int last = this.sizes.length - 1;
+		if (input.length != this.sizes[0]) {
+			throw new NeuralNetworkError(
+					"Size mismatch: Can't compute outputs for input size="
+							+ input.length + " for input layer size="
+							+ this.sizes[0]);
+		}
+		if (output.length < this.sizes[last]) {
+			throw new NeuralNetworkError("Size mismatch: Can't compute "
+					+ this.sizes[last] + " outputs into an array of "
+					+ output.length);
+		}
+
+		if (last == 0) {
+			System.arraycopy(input, 0, output, 0, input.length);
+			return;
+		}
+
+		final Workspace workspace = Workspace.current();
+		final int mark = workspace.mark();
+		try {
+			int largest = 0;
+			int widest = 0;
+			for (int i = 0; i < last; i++) {
+				if (i > 0) {
+					largest = Math.max(largest, this.sizes[i]);
+				}
+				widest = Math.max(widest, this.sizes[i]);
+			}
+			final double even[] = workspace.vector(largest);
+			final double odd[] = workspace.vector(largest);
+			final byte quantized[] = workspace.bytes(widest);
+
+			double x[] = input;
+			for (int i = 0; i < last; i++) {
+				final double y[] = (i == last - 1) ? output
+						: ((i % 2 == 0) ? even : odd);
+				computeLayer(i, x, quantized, y);
+				x = y;
+			}
+		} finally {
+			workspace.release(mark);
+		}
+	}
+
+	/**
+	 * Get the number of input neurons.
+	 * @return The number of inputs.
+	 */
+	public int getInputCount() {
+		return this.sizes[0];
+	}
+
+	/**
+	 * Get the number of layers, including the input and output layers.
+	 * @return The number of layers.
+	 */
+	public int getLayerCount() {
+		return this.sizes.length;
+	}
+
+	/**
+	 * Get the number of output neurons.
+	 * @return The number of outputs.
+	 */
+	public int getOutputCount() {
+		return this.sizes[this.sizes.length - 1];
+	}
+
+	/**
+	 * Get the number of quantized weights, not counting the thresholds.
+	 * Each takes one byte.
+	 * @return The number of weights.
+	 */
+	public int getWeightCount() {
+		return this.weights.length;
+	}
+
+	/**
+	 * Compute the outputs of one layer.
+	 * @param layer The layer.
+	 * @param x The input to the layer.
+	 * @param quantized Scratch space for the quantized input.
+	 * @param y Holds the outputs of the layer.
+	 */
+	private void computeLayer(final int layer, final double x[],
+			final byte quantized[], final double y[]) {
+		final int inputs = this.sizes[layer];
+		final int outputs = this.sizes[layer + 1];
+
+		// scale the input by its largest value
+		double largest = 0;
+		for (int k = 0; k < inputs; k++) {
+			largest = Math.max(largest, Math.abs(x[k]));
+		}
+		final double inputScale = largest / LEVELS;
+		if (largest > 0) {
+			final double factor = LEVELS / largest;
+			for (int k = 0; k < inputs; k++) {
+				quantized[k] = (byte) Math.round(x[k] * factor);
+			}
+		} else {
+			for (int k = 0; k < inputs; k++) {
+				quantized[k] = 0;
+			}
+		}
+
+		final byte w[] = this.weights;
+		final int neuron = this.neuronOffsets[layer];
+		final ActivationFunction activation = this.activations[layer];
+		for (int j = 0; j < outputs; j++) {
+			final int base = this.weightOffsets[layer] + j * inputs;
+			int sum = 0;
+			for (int k = 0; k < inputs; k++) {
+				sum += quantized[k] * w[base + k];
+			}
+			y[j] = activation.activationFunction(sum * inputScale
+					* this.scales[neuron + j] + this.thresholds[neuron + j]);
+		}
+	}
+
+	/**
+	 * Quantize the weight matrix of one layer.
+	 * @param layer The layer.
+	 * @param matrix Its weight matrix, the last row holds the thresholds.
+	 */
+	private void quantize(final int layer, final Matrix matrix) {
+		final int inputs = matrix.getRows() - 1;
+		final int outputs = matrix.getCols();
+		final int neuron = this.neuronOffsets[layer];
+
+		for (int j = 0; j < outputs; j++) {
+			double largest = 0;
+			for (int k = 0; k < inputs; k++) {
+				largest = Math.max(largest, Math.abs(matrix.get(k, j)));
+			}
+
+			final int base = this.weightOffsets[layer] + j * inputs;
+			this.scales[neuron + j] = largest / LEVELS;
+			this.thresholds[neuron + j] = matrix.get(inputs, j);
+			if (largest > 0) {
+				final double factor = LEVELS / largest;
+				for (int k = 0; k < inputs; k++) {
+					this.weights[base + k] = (byte) Math.round(matrix.get(k, j)
+							* factor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the largest of a set of values.
+	 * @param values The values.
+	 * @return The index of the largest value.
+	 */
+	private static int largest(final double values[]) {
+		int result = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[result]) {
+				result = i;
+			}
+		}
+		return result;
+	}
+}
@@ -1,5 +1,8 @@
 package com.aurora.ai.neuralnetwork.feedforward.train.anneal;
 
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
 import com.aurora.ai.neuralnetwork.anneal.SimulatedAnnealing;
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
@@ -12,6 +15,15 @@ import com.aurora.ai.neuralnetwork.matrix.MatrixCODEC;
  * in the same manner as any other training class that implements
  * the Train interface.
  * 
+ * The weights are moved in and out of the network through
+ * primitive buffers, rather than the boxed arrays of the generic
+ * class, so an iteration does not create garbage for each cycle.
+ * The buffers are sized again when the number of weights changes,
+ * such as after the network has been pruned.
+ * 
+ * The random changes come from a generator owned by this object,
+ * which can be replaced with a seeded one to reproduce a run.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
@@ -31,6 +43,20 @@ public class NeuralSimulatedAnnealing extends SimulatedAnnealing<Double> {
 	 */
 	protected double ideal[][];
 
+	/**
+	 * Buffer that holds the weights being randomized.
+	 */
+	private double current[];
+
+	/**
+	 * Buffer that holds the best weights found during an iteration.
+	 */
+	private double best[];
+
+	/**
+	 * The random number generator used to randomize the weights.
+	 */
+	private RandomGenerator random = new SplittableRandom();
 
 	/**
 	 * Construct a simulated annleaing trainer for a feedforward neural network.
@@ -58,6 +84,8 @@ public class NeuralSimulatedAnnealing extends SimulatedAnnealing<Double> {
 		setStartTemperature(startTemp);
 		setStopTemperature(stopTemp);
 		setCycles(cycles);
+		this.current = new double[network.getWeightMatrixSize()];
+		this.best = new double[network.getWeightMatrixSize()];
 	}
 
 	/**
@@ -87,6 +115,14 @@ public class NeuralSimulatedAnnealing extends SimulatedAnnealing<Double> {
 		return this.network;
 	}
 
+	/**
+	 * Get the random number generator.
+	 * @return The random number generator.
+	 */
+	public RandomGenerator getRandom() {
+		return this.random;
+	}
+
 	/**
 	 * Convert an array of doubles to the current best network.
 	 */
@@ -103,10 +139,12 @@ public class NeuralSimulatedAnnealing extends SimulatedAnnealing<Double> {
 	 */
 	@Override
 	public void randomize() {
-		final Double array[] = MatrixCODEC.networkToArray(this.network);
+		fitBuffers();
+		final double array[] = MatrixCODEC.networkToArray(this.network,
+				this.current);
 
 		for (int i = 0; i < array.length; i++) {
-			double add = 0.5 - (Math.random());
+			double add = 0.5 - (this.random.nextDouble());
 			add /= getStartTemperature();
 			add *= this.temperature;
 			array[i] = array[i] + add;
@@ -115,9 +153,47 @@ public class NeuralSimulatedAnnealing extends SimulatedAnnealing<Double> {
 		MatrixCODEC.arrayToNetwork(array, this.network);
 	}
 
+	/**
+	 * Put the best weights found so far back into the network.
+	 */
+	@Override
+	protected void restoreBest() {
+		MatrixCODEC.arrayToNetwork(this.best, this.network);
+	}
+
+	/**
+	 * Copy the weights of the network into the best buffer.
+	 */
+	@Override
+	protected void saveBest() {
+		fitBuffers();
+		MatrixCODEC.networkToArray(this.network, this.best);
+	}
+
+	/**
+	 * Set the random number generator.  Use a seeded generator to make
+	 * the training reproducible.
+	 * @param random The random number generator.
+	 */
+	public void setRandom(final RandomGenerator random) {
+		this.random = random;
+	}
+
 	@Override
 	public Double[] getArrayCopy() {
 		return this.getArray();
 	}
 
+	/**
+	 * Size the buffers again if the number of weights in the network has
+	 * changed since they were allocated.
+	 */
+	private void fitBuffers() {
+		final int size = this.network.getWeightMatrixSize();
+		if (this.current.length != size) {
+			this.current = new double[size];
+			this.best = new double[size];
+		}
+	}
+
 }
\ No newline at end of file
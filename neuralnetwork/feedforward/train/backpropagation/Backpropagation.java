@@ -2,6 +2,7 @@ package com.aurora.ai.neuralnetwork.feedforward.train.backpropagation;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralLayer;
@@ -71,6 +72,11 @@ public class Backpropagation implements Train {
 	 */
 	private final double ideal[][];
 
+	/**
+	 * An optional pool used to update large weight matrices in parallel.
+	 */
+	private ForkJoinPool pool;
+
 	/**
 	 * 
 	 * @param network
@@ -166,6 +172,14 @@ public class Backpropagation implements Train {
 		return this.network;
 	}
 
+	/**
+	 * Get the optional pool.
+	 * @return The pool, or null if learning runs on the calling thread.
+	 */
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
 	/**
 	 * Perform one iteration of training.
 	 */
@@ -191,4 +205,13 @@ public class Backpropagation implements Train {
 		}
 
 	}
+
+	/**
+	 * Set the optional pool.  The weight matrix updates will be split
+	 * across this pool when they are large enough.
+	 * @param pool The pool to use, or null to learn on the calling thread.
+	 */
+	public void setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
 }
\ No newline at end of file
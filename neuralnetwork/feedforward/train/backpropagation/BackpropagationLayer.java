@@ -79,7 +79,7 @@ public class BackpropagationLayer {
 	 */
 	public void accumulateMatrixDelta(final int i1, final int i2,
 			final double value) {
-		this.accMatrixDelta.add(i1, i2, value);
+		this.accMatrixDelta.addUnchecked(i1, i2, value);
 	}
 
 	/**
@@ -88,7 +88,7 @@ public class BackpropagationLayer {
 	 * @param value The threshold value.
 	 */
 	public void accumulateThresholdDelta(final int index, final double value) {
-		this.accMatrixDelta.add(this.biasRow, index, value);
+		this.accMatrixDelta.addUnchecked(this.biasRow, index, value);
 	}
 
 	/**
@@ -99,13 +99,25 @@ public class BackpropagationLayer {
 		final BackpropagationLayer next = this.backpropagation
 				.getBackpropagationLayer(this.layer.getNext());
 
-		for (int i = 0; i < this.layer.getNext().getNeuronCount(); i++) {
-			for (int j = 0; j < this.layer.getNeuronCount(); j++) {
-				accumulateMatrixDelta(j, i, next.getErrorDelta(i)
-						* this.layer.getFire(j));
-				setError(j, getError(j) + this.layer.getMatrix().get(j, i)
-						* next.getErrorDelta(i));
+		final int nextCount = this.layer.getNext().getNeuronCount();
+		final Matrix weights = this.layer.getMatrix();
+		final double acc[] = this.accMatrixDelta.getData();
+
+		// walk both matrices one row at a time, so that each row is
+		// a sequential scan
+		for (int j = 0; j < this.layer.getNeuronCount(); j++) {
+			final double fire = this.layer.getFire(j);
+			final int row = j * nextCount;
+			double e = 0;
+			for (int i = 0; i < nextCount; i++) {
+				final double delta = next.getErrorDelta(i);
+				acc[row + i] += delta * fire;
+				e += weights.getUnchecked(j, i) * delta;
 			}
+			setError(j, getError(j) + e);
+		}
+
+		for (int i = 0; i < nextCount; i++) {
 			accumulateThresholdDelta(i, next.getErrorDelta(i));
 		}
 
@@ -179,14 +191,12 @@ public class BackpropagationLayer {
 	public void learn(final double learnRate, final double momentum) {
 		// process the matrix
 		if (this.layer.hasMatrix()) {
-
-			final Matrix m1 = MatrixMath.multiply(this.accMatrixDelta,
-					learnRate);
-			final Matrix m2 = MatrixMath.multiply(this.matrixDelta, momentum);
-			this.matrixDelta = MatrixMath.add(m1, m2);
-			this.layer.setMatrix(MatrixMath.add(this.layer.getMatrix(),
-					this.matrixDelta));
-			this.accMatrixDelta.clear();
+			// update the weights in place, this also saves the new deltas
+			// for momentum and clears the accumulated deltas
+			MatrixMath.momentumUpdate(this.layer.getMatrix(),
+					this.accMatrixDelta, this.matrixDelta, learnRate, momentum,
+					this.backpropagation.getPool());
+			this.layer.matrixChanged();
 		}
 	}
 
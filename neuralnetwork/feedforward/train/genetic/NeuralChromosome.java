@@ -1,6 +1,8 @@
 package com.aurora.ai.neuralnetwork.feedforward.train.genetic;
 
 import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
@@ -54,10 +56,18 @@ abstract public class NeuralChromosome<GA_TYPE extends GeneticAlgorithm<?>>
 	 */
 	@Override
 	public void mutate() {
+		mutate(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Mutate this chromosome randomly, using the specified generator.
+	 */
+	@Override
+	public void mutate(final RandomGenerator random) {
 		final int length = getGenes().length;
 		for (int i = 0; i < length; i++) {
 			double d = getGene(i);
-			final double ratio = (int) ((RANGE * Math.random()) - RANGE);
+			final double ratio = (int) ((RANGE * random.nextDouble()) - RANGE);
 			d*=ratio;
 			setGene(i,d);
 		}
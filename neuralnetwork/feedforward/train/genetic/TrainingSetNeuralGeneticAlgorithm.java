@@ -1,5 +1,8 @@
 package com.aurora.ai.neuralnetwork.feedforward.train.genetic;
 
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
 
@@ -23,7 +26,23 @@ public class TrainingSetNeuralGeneticAlgorithm extends
 			final double ideal[][], final int populationSize,
 			final double mutationPercent, final double percentToMate)
 			throws NeuralNetworkError {
+		this(network, reset, input, ideal, populationSize, mutationPercent,
+				percentToMate, new SplittableRandom());
+	}
+
+	/**
+	 * Construct the genetic algorithm with the specified random number
+	 * generator.  A seeded generator makes the initial population, and
+	 * every iteration after it, reproducible.
+	 */
+	public TrainingSetNeuralGeneticAlgorithm(final NeuralNetwork network,
+			final boolean reset, final double input[][],
+			final double ideal[][], final int populationSize,
+			final double mutationPercent, final double percentToMate,
+			final RandomGenerator.SplittableGenerator random)
+			throws NeuralNetworkError {
 
+		this.setRandom(random);
 		this.setMutationPercent(mutationPercent);
 		this.setMatingPopulation(percentToMate * 2);
 		this.setPopulationSize(populationSize);
@@ -37,7 +56,7 @@ public class TrainingSetNeuralGeneticAlgorithm extends
 			final NeuralNetwork chromosomeNetwork = (NeuralNetwork) network
 					.clone();
 			if (reset) {
-				chromosomeNetwork.reset();
+				chromosomeNetwork.reset(random);
 			}
 
 			final TrainingSetNeuralChromosome c = new TrainingSetNeuralChromosome(
@@ -2,6 +2,8 @@ package com.aurora.ai.neuralnetwork.genetic;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 
@@ -143,10 +145,31 @@ abstract public class Chromosome<GENE_TYPE, GA_TYPE extends GeneticAlgorithm<?>>
 			final Chromosome<GENE_TYPE, GA_TYPE> offspring1,
 			final Chromosome<GENE_TYPE, GA_TYPE> offspring2)
 			throws NeuralNetworkError {
+		mate(father, offspring1, offspring2, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Assuming this chromosome is the "mother" mate with the passed in
+	 * "father", making all random choices with the specified generator.
+	 * 
+	 * @param father
+	 *            The father.
+	 * @param offspring1
+	 *            Returns the first offspring
+	 * @param offspring2
+	 *            Returns the second offspring.
+	 * @param random
+	 *            The random number generator to use.
+	 * @throws NeuralNetworkException
+	 */
+	public void mate(final Chromosome<GENE_TYPE, GA_TYPE> father,
+			final Chromosome<GENE_TYPE, GA_TYPE> offspring1,
+			final Chromosome<GENE_TYPE, GA_TYPE> offspring2,
+			final RandomGenerator random) throws NeuralNetworkError {
 		final int geneLength = getGenes().length;
 
 		// the chromosome must be cut at two positions, determine them
-		final int cutpoint1 = (int) (Math.random() * (geneLength - getGeneticAlgorithm()
+		final int cutpoint1 = (int) (random.nextDouble() * (geneLength - getGeneticAlgorithm()
 				.getCutLength()));
 		final int cutpoint2 = cutpoint1 + getGeneticAlgorithm().getCutLength();
 
@@ -180,11 +203,11 @@ abstract public class Chromosome<GENE_TYPE, GA_TYPE extends GeneticAlgorithm<?>>
 		}
 
 		// mutate
-		if (Math.random() < this.geneticAlgorithm.getMutationPercent()) {
-			offspring1.mutate();
+		if (random.nextDouble() < this.geneticAlgorithm.getMutationPercent()) {
+			offspring1.mutate(random);
 		}
-		if (Math.random() < this.geneticAlgorithm.getMutationPercent()) {
-			offspring2.mutate();
+		if (random.nextDouble() < this.geneticAlgorithm.getMutationPercent()) {
+			offspring2.mutate(random);
 		}
 		
 		// calculate cost
@@ -198,6 +221,16 @@ abstract public class Chromosome<GENE_TYPE, GA_TYPE extends GeneticAlgorithm<?>>
 	 */
 	abstract public void mutate();
 
+	/**
+	 * Called to mutate this chromosome using the specified generator.
+	 * Chromosomes that make random choices when they mutate should
+	 * override this, by default it calls mutate().
+	 * @param random The random number generator to use.
+	 */
+	public void mutate(final RandomGenerator random) {
+		mutate();
+	}
+
 	/**
 	 * Set the cost for this chromosome.
 	 * @param cost
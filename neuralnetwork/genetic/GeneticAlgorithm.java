@@ -3,9 +3,11 @@ package com.aurora.ai.neuralnetwork.genetic;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.SplittableRandom;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 
@@ -17,6 +19,11 @@ import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
  * 
  * The genetic algorithm is also capable of using a thread pool
  * to speed execution.  
+ * 
+ * All random choices come from a splittable random number generator.
+ * Each mating is given its own generator, split from this one in
+ * order, so the threads never share a generator and a seeded
+ * generator gives the same results with or without a thread pool.
  *  
  * @author Eke Stephen
  * @version 1.0
@@ -60,6 +67,11 @@ abstract public class GeneticAlgorithm<CHROMOSOME_TYPE extends Chromosome<?, ?>>
 	 */
 	private ExecutorService pool;
 
+	/**
+	 * The random number generator that all random choices are made from.
+	 */
+	private RandomGenerator.SplittableGenerator random = new SplittableRandom();
+
 	/**
 	 * The population.
 	 */
@@ -122,6 +134,14 @@ abstract public class GeneticAlgorithm<CHROMOSOME_TYPE extends Chromosome<?, ?>>
 		return this.pool;
 	}
 
+	/**
+	 * Get the random number generator.
+	 * @return The random number generator.
+	 */
+	public RandomGenerator.SplittableGenerator getRandom() {
+		return this.random;
+	}
+
 	/**
 	 * Get the population size.
 	 * @return The population size.
@@ -156,13 +176,13 @@ abstract public class GeneticAlgorithm<CHROMOSOME_TYPE extends Chromosome<?, ?>>
 		// mate and form the next generation
 		for (int i = 0; i < countToMate; i++) {
 			final CHROMOSOME_TYPE mother = this.chromosomes[i];
-			final int fatherInt = (int) (Math.random() * matingPopulationSize);
+			final int fatherInt = (int) (this.random.nextDouble() * matingPopulationSize);
 			final CHROMOSOME_TYPE father = this.chromosomes[fatherInt];
 			final CHROMOSOME_TYPE child1 = this.chromosomes[offspringIndex];
 			final CHROMOSOME_TYPE child2 = this.chromosomes[offspringIndex + 1];
 
 			final MateWorker<CHROMOSOME_TYPE> worker = new MateWorker<CHROMOSOME_TYPE>(
-					mother, father, child1, child2);
+					mother, father, child1, child2, this.random.split());
 
 			try {
 				if (this.pool != null) {
@@ -250,6 +270,15 @@ abstract public class GeneticAlgorithm<CHROMOSOME_TYPE extends Chromosome<?, ?>>
 		this.pool = pool;
 	}
 
+	/**
+	 * Set the random number generator.  Use a seeded generator, such as
+	 * new SplittableRandom(seed), to make the results reproducible.
+	 * @param random The random number generator.
+	 */
+	public void setRandom(final RandomGenerator.SplittableGenerator random) {
+		this.random = random;
+	}
+
 	/**
 	 * Set the population size.
 	 * @param populationSize The population size.
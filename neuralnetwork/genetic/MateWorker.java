@@ -1,12 +1,17 @@
 package com.aurora.ai.neuralnetwork.genetic;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * MateWorker: This class is used in conjunction with a thread pool.
  * This allows the genetic algorithm to offload all of those calculations
  * to a thread pool.  
  * 
+ * Each worker has its own random number generator, so that workers
+ * running at the same time do not compete for one.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
@@ -16,20 +21,32 @@ public class MateWorker<CHROMOSME_TYPE extends Chromosome<?, ?>> implements
 	private final CHROMOSME_TYPE father;
 	private final CHROMOSME_TYPE child1;
 	private final CHROMOSME_TYPE child2;
+	private final RandomGenerator random;
 
 	public MateWorker(final CHROMOSME_TYPE mother, final CHROMOSME_TYPE father,
 			final CHROMOSME_TYPE child1, final CHROMOSME_TYPE child2) {
+		this(mother, father, child1, child2, null);
+	}
+
+	public MateWorker(final CHROMOSME_TYPE mother, final CHROMOSME_TYPE father,
+			final CHROMOSME_TYPE child1, final CHROMOSME_TYPE child2,
+			final RandomGenerator random) {
 		this.mother = mother;
 		this.father = father;
 		this.child1 = child1;
 		this.child2 = child2;
+		this.random = random;
 	}
 
 	@SuppressWarnings("unchecked")
 	public Integer call() throws Exception {
+		// without a generator of its own, use the one for this thread
+		final RandomGenerator random = (this.random != null) ? this.random
+				: ThreadLocalRandom.current();
 		this.mother.mate((Chromosome)this.father, 
 				(Chromosome)this.child1, 
-				(Chromosome)this.child2);
+				(Chromosome)this.child2,
+				random);
 		return null;
 	}
 
@@ -1,9 +1,12 @@
 package com.aurora.ai.neuralnetwork.hopfield;
 
+import java.util.concurrent.ForkJoinPool;
+
 import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
 import com.aurora.ai.neuralnetwork.matrix.BiPolarUtil;
 import com.aurora.ai.neuralnetwork.matrix.Matrix;
 import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.VectorView;
 
 /**
  * HopfieldNetwork: This class implements a Hopfield neural network.
@@ -25,6 +28,11 @@ public class HopfieldNetwork {
 	 */
 	private Matrix weightMatrix;
 
+	/**
+	 * An optional pool used to train large networks in parallel.
+	 */
+	private ForkJoinPool pool;
+
 	public HopfieldNetwork(final int size) {
 		this.weightMatrix = new Matrix(size, size);
 
@@ -39,6 +47,15 @@ public class HopfieldNetwork {
 		return this.weightMatrix;
 	}
 
+	/**
+	 * Get the optional pool.
+	 * 
+	 * @return The pool, or null if training runs on the calling thread.
+	 */
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
 	/**
 	 * Get the size of this neural network.
 	 * 
@@ -61,20 +78,19 @@ public class HopfieldNetwork {
 
 		final boolean output[] = new boolean[pattern.length];
 
-		// convert the input pattern into a matrix with a single row.
+		// convert the input pattern into a vector.
 		// also convert the boolean values to bipolar(-1=false, 1=true)
-		final Matrix inputMatrix = Matrix.createRowMatrix(BiPolarUtil
+		final VectorView inputVector = new VectorView(BiPolarUtil
 				.bipolar2double(pattern));
 
 		// Process each value in the pattern
 		for (int col = 0; col < pattern.length; col++) {
-			Matrix columnMatrix = this.weightMatrix.getCol(col);
-			columnMatrix = MatrixMath.transpose(columnMatrix);
+			final VectorView columnVector = this.weightMatrix.getColView(col);
 
 			// The output for this input element is the dot product of the
-			// input matrix and one column from the weight matrix.
-			final double dotProduct = MatrixMath.dotProduct(inputMatrix,
-					columnMatrix);
+			// input vector and one column from the weight matrix.
+			final double dotProduct = MatrixMath.dotProduct(inputVector,
+					columnVector);
 
 			// Convert the dot product to either true or false.
 			if (dotProduct > 0) {
@@ -87,6 +103,17 @@ public class HopfieldNetwork {
 		return output;
 	}
 
+	/**
+	 * Set the optional pool.  Matrix operations performed during training
+	 * will be split across this pool when they are large enough.
+	 * 
+	 * @param pool
+	 *            The pool to use, or null to train on the calling thread.
+	 */
+	public void setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
 	/**
 	 * Train the neural network for the specified pattern. The neural network
 	 * can be trained for more than one pattern. To do this simply call the
@@ -104,23 +131,61 @@ public class HopfieldNetwork {
 					+ this.weightMatrix.getRows());
 		}
 
-		// Create a row matrix from the input, convert boolean to bipolar
-		final Matrix m2 = Matrix.createRowMatrix(BiPolarUtil
-				.bipolar2double(pattern));
-		// Transpose the matrix and multiply by the original input matrix
-		final Matrix m1 = MatrixMath.transpose(m2);
-		final Matrix m3 = MatrixMath.multiply(m1, m2);
+		// convert boolean to bipolar
+		final double input[] = BiPolarUtil.bipolar2double(pattern);
 
-		// matrix 3 should be square by now, so create an identity
-		// matrix of the same size.
-		final Matrix identity = MatrixMath.identity(m3.getRows());
+		// add the outer product of the pattern with itself to the weight
+		// matrix, in place
+		MatrixMath.rankOneUpdate(this.weightMatrix, input, input, this.pool);
 
-		// subtract the identity matrix
-		final Matrix m4 = MatrixMath.subtract(m3, identity);
+		// subtract the identity matrix, so that no neuron is connected to
+		// itself
+		subtractIdentity(1);
+	}
 
-		// now add the calculated matrix, for this pattern, to the
-		// existing weight matrix.
-		this.weightMatrix = MatrixMath.add(this.weightMatrix, m4);
+	/**
+	 * Train the neural network for several patterns at once.  This has the
+	 * same result as training each pattern in turn, but the weight matrix
+	 * is only swept once.
+	 * 
+	 * @param patterns
+	 *            The patterns to train on.
+	 * @throws HopfieldException
+	 *             The pattern size must match the size of this neural network.
+	 */
+	public void train(final boolean[][] patterns) {
+		if (patterns.length == 0) {
+			return;
+		}
+
+		for (final boolean pattern[] : patterns) {
+			if (pattern.length != this.weightMatrix.getRows()) {
+				throw new NeuralNetworkError("Can't train a pattern of size "
+						+ pattern.length + " on a hopfield network of size "
+						+ this.weightMatrix.getRows());
+			}
+		}
 
+		// one bipolar pattern in each row
+		final Matrix input = new Matrix(BiPolarUtil.bipolar2double(patterns));
+
+		// add the outer product of each pattern with itself to the weight
+		// matrix, in a single pass
+		MatrixMath.rankUpdate(this.weightMatrix, input, input, this.pool);
+
+		// subtract the identity matrix once for each pattern
+		subtractIdentity(patterns.length);
+	}
+
+	/**
+	 * Subtract a multiple of the identity matrix from the weight matrix.
+	 * 
+	 * @param count
+	 *            How many times to subtract the identity matrix.
+	 */
+	private void subtractIdentity(final int count) {
+		for (int i = 0; i < this.weightMatrix.getRows(); i++) {
+			this.weightMatrix.addUnchecked(i, i, -count);
+		}
 	}
 }
\ No newline at end of file
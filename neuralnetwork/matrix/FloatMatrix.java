@@ -0,0 +1,294 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * FloatMatrix: A matrix that stores its values at single precision.
+ * It uses half of the memory of a regular Matrix, which matters most
+ * when the matrix is read far more often than it is changed, such as
+ * the weights of a trained neural network.
+ *
+ * Values are rounded to the nearest float when they are stored, and
+ * are returned as doubles.  The matrix math that reads a FloatMatrix
+ * still adds up its products as doubles, so only the storage loses
+ * precision, not the sums.
+ *
+ * This class can be used anywhere a Matrix can.  It has no double
+ * array, so getData() is not supported, use getFloatData() instead.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class FloatMatrix extends Matrix {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = -4157204460981625806L;
+
+	/**
+	 * The matrix values, stored row-major.
+	 */
+	final float values[];
+
+	/**
+	 * Construct an empty matrix.  All values start as zero.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 */
+	public FloatMatrix(final int rows, final int cols) {
+		this(rows, cols, new float[rows * cols]);
+	}
+
+	/**
+	 * Construct a single precision copy of another matrix.
+	 * @param source The matrix to copy.
+	 */
+	public FloatMatrix(final Matrix source) {
+		this(source.getRows(), source.getCols(), toFloats(source));
+	}
+
+	/**
+	 * Wrap an existing row-major array, no copy is made.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @param values The row-major values.
+	 */
+	FloatMatrix(final int rows, final int cols, final float values[]) {
+		super(rows, cols, null);
+		this.values = values;
+	}
+
+	@Override
+	public void add(final int row, final int col, final double value) {
+		validate(row, col);
+		set(row, col, getUnchecked(row, col) + value);
+	}
+
+	@Override
+	public void addUnchecked(final int row, final int col, final double value) {
+		final int index = row * this.cols + col;
+		this.values[index] = (float) (this.values[index] + value);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.values, 0);
+	}
+
+	@Override
+	public FloatMatrix clone() {
+		return new FloatMatrix(this.rows, this.cols, this.values.clone());
+	}
+
+	@Override
+	public int fromPackedArray(final Double[] array, int index) {
+		for (int i = 0; i < this.values.length; i++) {
+			this.values[i] = array[index++].floatValue();
+		}
+		return index;
+	}
+
+	@Override
+	public int fromPackedArray(final double array[], int index) {
+		for (int i = 0; i < this.values.length; i++) {
+			this.values[i] = (float) array[index++];
+		}
+		return index;
+	}
+
+	@Override
+	public double get(final int row, final int col) {
+		validate(row, col);
+		return this.values[row * this.cols + col];
+	}
+
+	/**
+	 * Copy a column into a new double precision matrix.
+	 * @param col The column.
+	 * @return The column.
+	 */
+	@Override
+	public Matrix getCol(final int col) {
+		return new Matrix(this.rows, 1, getColView(col).toArray());
+	}
+
+	@Override
+	public VectorView getColView(final int col) {
+		if ((col >= getCols()) || (col < 0)) {
+			throw new MatrixError("Can't get column #" + col
+					+ " because it does not exist.");
+		}
+		return new FloatView(col, this.cols, this.rows);
+	}
+
+	/**
+	 * A single precision matrix has no double array.
+	 * @return Never returns.
+	 */
+	@Override
+	public double[] getData() {
+		throw new MatrixError(
+				"A single precision matrix does not have a double array, use getFloatData instead.");
+	}
+
+	/**
+	 * Get the backing array.  The values are stored row-major, and
+	 * changes to the returned array are reflected in this matrix.
+	 * @return The backing array.
+	 */
+	public float[] getFloatData() {
+		return this.values;
+	}
+
+	/**
+	 * Copy a row into a new double precision matrix.
+	 * @param row The row.
+	 * @return The row.
+	 */
+	@Override
+	public Matrix getRow(final int row) {
+		return new Matrix(1, this.cols, getRowView(row).toArray());
+	}
+
+	@Override
+	public VectorView getRowView(final int row) {
+		if ((row >= getRows()) || (row < 0)) {
+			throw new MatrixError("Can't get row #" + row
+					+ " because it does not exist.");
+		}
+		return new FloatView(row * this.cols, 1, this.cols);
+	}
+
+	@Override
+	public double getUnchecked(final int row, final int col) {
+		return this.values[row * this.cols + col];
+	}
+
+	@Override
+	public boolean isZero() {
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void ramdomize(final double min, final double max,
+			final RandomGenerator random) {
+		for (int i = 0; i < this.values.length; i++) {
+			this.values[i] = (float) ((random.nextDouble() * (max - min)) + min);
+		}
+	}
+
+	@Override
+	public void set(final int row, final int col, final double value) {
+		validate(row, col);
+		// a value that fits in a double may not fit in a float
+		checkValue((float) value);
+		this.values[row * this.cols + col] = (float) value;
+	}
+
+	@Override
+	public void setUnchecked(final int row, final int col, final double value) {
+		this.values[row * this.cols + col] = (float) value;
+	}
+
+	@Override
+	public double sum() {
+		double result = 0;
+		for (int i = 0; i < this.values.length; i++) {
+			result += this.values[i];
+		}
+		return result;
+	}
+
+	@Override
+	public Double[] toPackedArray() {
+		final Double result[] = new Double[this.values.length];
+		for (int i = 0; i < this.values.length; i++) {
+			result[i] = (double) this.values[i];
+		}
+		return result;
+	}
+
+	@Override
+	public int toPackedArray(final double array[], int index) {
+		for (int i = 0; i < this.values.length; i++) {
+			array[index++] = this.values[i];
+		}
+		return index;
+	}
+
+	/**
+	 * Round the values of a matrix to floats.
+	 * @param source The matrix.
+	 * @return The row-major values.
+	 */
+	private static float[] toFloats(final Matrix source) {
+		final float result[] = new float[source.size()];
+		if (source instanceof FloatMatrix) {
+			System.arraycopy(((FloatMatrix) source).values, 0, result, 0,
+					result.length);
+		} else if (source.data != null) {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = (float) source.data[i];
+			}
+		} else {
+			final int cols = source.getCols();
+			for (int i = 0; i < result.length; i++) {
+				result[i] = (float) source.getUnchecked(i / cols, i % cols);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * FloatView: A view of a row or column of a FloatMatrix.
+	 */
+	private final class FloatView extends VectorView {
+
+		/**
+		 * The index of the first element.
+		 */
+		private final int start;
+
+		/**
+		 * The distance between two elements.
+		 */
+		private final int step;
+
+		/**
+		 * Construct the view.
+		 * @param start The index of the first element.
+		 * @param step The distance between two elements.
+		 * @param length The number of elements.
+		 */
+		FloatView(final int start, final int step, final int length) {
+			super(length);
+			this.start = start;
+			this.step = step;
+		}
+
+		@Override
+		double load(final int index) {
+			return FloatMatrix.this.values[this.start + index * this.step];
+		}
+
+		@Override
+		void checkValue(final double value) {
+			// a value that fits in a double may not fit in a float
+			super.checkValue((float) value);
+		}
+
+		@Override
+		void store(final int index, final double value) {
+			FloatMatrix.this.values[this.start + index * this.step] = (float) value;
+		}
+	}
+}
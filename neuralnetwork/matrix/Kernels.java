@@ -0,0 +1,189 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Kernels: The inner loops used by the matrix classes.  Two
+ * implementations are provided.  ScalarKernels uses plain Java loops
+ * and is always available.  SimdKernels uses the incubating JDK
+ * Vector API to process several values with each instruction, at
+ * the widest width the platform prefers.
+ *
+ * SimdKernels is only used when the jdk.incubator.vector module is
+ * available at runtime, for example when the JVM is started with
+ * --add-modules jdk.incubator.vector.  Otherwise, or if the system
+ * property com.aurora.ai.neuralnetwork.matrix.simd is set to false,
+ * the scalar kernels are used.
+ *
+ * The kernels that read or write the memory of an OffHeapMatrix are in
+ * OffHeapKernels, so that these do not depend on a preview API.
+ *
+ * All arrays are accessed without validation, callers must check the
+ * dimensions first.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+abstract class Kernels {
+
+	/**
+	 * The system property that can be used to turn off the vector kernels.
+	 */
+	static final String SIMD_PROPERTY = "com.aurora.ai.neuralnetwork.matrix.simd";
+
+	/**
+	 * The kernels in use.
+	 */
+	static final Kernels INSTANCE = create();
+
+	/**
+	 * Choose the best kernels that are available.
+	 * @return The kernels to use.
+	 */
+	private static Kernels create() {
+		if (!"false".equalsIgnoreCase(System.getProperty(SIMD_PROPERTY))) {
+			try {
+				return (Kernels) Class.forName(
+						"com.aurora.ai.neuralnetwork.matrix.SimdKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch (final Exception e) {
+				// fall through to the scalar kernels
+			} catch (final LinkageError e) {
+				// the vector module is not present
+			}
+		}
+		return new ScalarKernels();
+	}
+
+	/**
+	 * result[i] = a[i] + b[i] for i from start to end.
+	 */
+	abstract void add(double a[], double b[], double result[], int start,
+			int end);
+
+	/**
+	 * y[yOffset+i] += alpha * x[xOffset+i] for i from 0 to length.
+	 */
+	abstract void axpy(double alpha, double x[], int xOffset, double y[],
+			int yOffset, int length);
+
+	/**
+	 * y[yOffset+i] += alpha * x[xOffset+i] for i from 0 to length, where x
+	 * is single precision.
+	 */
+	void axpy(final double alpha, final float x[], final int xOffset,
+			final double y[], final int yOffset, final int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	/**
+	 * The sum of a[aOffset+i] * b[bOffset+i] for i from 0 to length.
+	 */
+	abstract double dot(double a[], int aOffset, double b[], int bOffset,
+			int length);
+
+	/**
+	 * y = m * x, where m is rows x cols and stored row-major.
+	 */
+	void gemv(final double m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		for (int r = 0; r < rows; r++) {
+			y[r] = dot(m, r * cols, x, 0, cols);
+		}
+	}
+
+	/**
+	 * y = transpose(m) * x, where m is rows x cols and stored row-major.
+	 * The rows of m are each read once, in order.
+	 */
+	void gemvTransposed(final double m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows; r++) {
+			axpy(x[r], m, r * cols, y, 0, cols);
+		}
+	}
+
+	/**
+	 * y = transpose(m) * [x, 1], where m is rows x cols and stored
+	 * row-major, and x has rows - 1 values.  The last row of m is a bias
+	 * that is added as if x ended with a one.
+	 */
+	void gemvTransposedBias(final double m[], final int rows,
+			final int cols, final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows - 1; r++) {
+			axpy(x[r], m, r * cols, y, 0, cols);
+		}
+		axpy(1, m, (rows - 1) * cols, y, 0, cols);
+	}
+
+	/**
+	 * y = m * x, where m is rows x cols, stored row-major at single
+	 * precision.  The products are added up as doubles.
+	 */
+	void gemv(final float m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		for (int r = 0; r < rows; r++) {
+			final int base = r * cols;
+			double sum = 0;
+			for (int c = 0; c < cols; c++) {
+				sum += m[base + c] * x[c];
+			}
+			y[r] = sum;
+		}
+	}
+
+	/**
+	 * y = transpose(m) * x, where m is rows x cols, stored row-major at
+	 * single precision.  The products are added up as doubles.
+	 */
+	void gemvTransposed(final float m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows; r++) {
+			final int base = r * cols;
+			final double alpha = x[r];
+			for (int c = 0; c < cols; c++) {
+				y[c] += alpha * m[base + c];
+			}
+		}
+	}
+
+	/**
+	 * y = transpose(m) * [x, 1], where m is rows x cols, stored row-major
+	 * at single precision, and x has rows - 1 values.  The products are
+	 * added up as doubles.
+	 */
+	void gemvTransposedBias(final float m[], final int rows,
+			final int cols, final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows; r++) {
+			final int base = r * cols;
+			final double alpha = (r < rows - 1) ? x[r] : 1;
+			for (int c = 0; c < cols; c++) {
+				y[c] += alpha * m[base + c];
+			}
+		}
+	}
+
+	/**
+	 * Get a name for these kernels.
+	 * @return The name.
+	 */
+	abstract String getName();
+
+	/**
+	 * result[i] = a[i] * factor for i from start to end.
+	 */
+	abstract void scale(double a[], double factor, double result[],
+			int start, int end);
+
+	/**
+	 * result[i] = a[i] - b[i] for i from start to end.
+	 */
+	abstract void subtract(double a[], double b[], double result[],
+			int start, int end);
+}
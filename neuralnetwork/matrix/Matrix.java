@@ -1,6 +1,13 @@
 package com.aurora.ai.neuralnetwork.matrix;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import com.aurora.ai.neuralnetwork.exception.MatrixError;
 
@@ -9,7 +16,21 @@ import com.aurora.ai.neuralnetwork.exception.MatrixError;
  * math is very important to neural network processing.  Many
  * of the classes developed in this book will make use of the
  * matrix classes in this package.
- *  
+ *
+ * The values are held in a single row-major array, the element
+ * at (row,col) is found at index row*cols+col.  The regular
+ * get/set methods validate their arguments, the "unchecked"
+ * methods do not and are intended for bulk kernels that have
+ * already validated the dimensions they work with.
+ *
+ * Subclasses may keep their values somewhere other than a Java array,
+ * see OffHeapMatrix.  Such subclasses have no backing array and
+ * override every method that reads or writes the values.
+ *
+ * Matrices are serialized in a compact binary form, see MatrixProxy.
+ * Matrices serialized before that form existed held their values in a
+ * field named matrix, a double[][], and are still read, see readObject.
+ *
  * @author Eke Stephen
  * @version 1.0
  */
@@ -21,45 +42,74 @@ public class Matrix implements Cloneable, Serializable {
 	private static final long serialVersionUID = -7977897210426471675L;
 
 	public static Matrix createColumnMatrix(final double input[]) {
-		final double d[][] = new double[input.length][1];
-		for (int row = 0; row < d.length; row++) {
-			d[row][0] = input[row];
-		}
-		return new Matrix(d);
+		final double d[] = new double[input.length];
+		System.arraycopy(input, 0, d, 0, input.length);
+		return new Matrix(input.length, 1, d);
 	}
 
 	public static Matrix createRowMatrix(final double input[]) {
-		final double d[][] = new double[1][input.length];
-		System.arraycopy(input, 0, d[0], 0, input.length);
-		return new Matrix(d);
+		final double d[] = new double[input.length];
+		System.arraycopy(input, 0, d, 0, input.length);
+		return new Matrix(1, input.length, d);
 	}
 
-	double matrix[][];
+	/**
+	 * The number of rows.
+	 */
+	final int rows;
+
+	/**
+	 * The number of columns, also the stride between rows.
+	 */
+	final int cols;
+
+	/**
+	 * The matrix values, stored row-major.  This is null for subclasses
+	 * that store their values elsewhere.
+	 */
+	final double data[];
+
+	/**
+	 * The values of a matrix read from the old serialized form, only used
+	 * between readObject and readResolve.
+	 */
+	private transient double legacy[][];
 
 	public Matrix(final boolean sourceMatrix[][]) {
-		this.matrix = new double[sourceMatrix.length][sourceMatrix[0].length];
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				if (sourceMatrix[r][c]) {
-					this.set(r, c, 1);
-				} else {
-					this.set(r, c, -1);
-				}
+		this(sourceMatrix.length, sourceMatrix[0].length);
+		int index = 0;
+		for (int r = 0; r < this.rows; r++) {
+			for (int c = 0; c < this.cols; c++) {
+				this.data[index++] = sourceMatrix[r][c] ? 1 : -1;
 			}
 		}
 	}
 
 	public Matrix(final double sourceMatrix[][]) {
-		this.matrix = new double[sourceMatrix.length][sourceMatrix[0].length];
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				this.set(r, c, sourceMatrix[r][c]);
+		this(sourceMatrix.length, sourceMatrix[0].length);
+		for (int r = 0; r < this.rows; r++) {
+			final double row[] = sourceMatrix[r];
+			for (int c = 0; c < this.cols; c++) {
+				checkValue(row[c]);
 			}
+			System.arraycopy(row, 0, this.data, r * this.cols, this.cols);
 		}
 	}
 
 	public Matrix(final int rows, final int cols) {
-		this.matrix = new double[rows][cols];
+		this(rows, cols, new double[rows * cols]);
+	}
+
+	/**
+	 * Wrap an existing row-major array, no copy is made.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @param data The row-major values, or null if a subclass stores them.
+	 */
+	Matrix(final int rows, final int cols, final double data[]) {
+		this.rows = rows;
+		this.cols = cols;
+		this.data = data;
 	}
 
 	public void add(final int row, final int col, final double value) {
@@ -68,17 +118,24 @@ public class Matrix implements Cloneable, Serializable {
 		set(row, col, newValue);
 	}
 
+	/**
+	 * Add to a value without validating the row and column, or checking
+	 * the result.
+	 * @param row The row.
+	 * @param col The column.
+	 * @param value The value to add.
+	 */
+	public void addUnchecked(final int row, final int col, final double value) {
+		this.data[row * this.cols + col] += value;
+	}
+
 	public void clear() {
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				set(r, c, 0);
-			}
-		}
+		Arrays.fill(this.data, 0);
 	}
 
 	@Override
 	public Matrix clone() {
-		return new Matrix(this.matrix);
+		return new Matrix(this.rows, this.cols, this.data.clone());
 	}
 
 	public boolean equals(final Matrix matrix) {
@@ -99,75 +156,151 @@ public class Matrix implements Cloneable, Serializable {
 
 		precision = (int) Math.pow(10, precision);
 
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				if ((long) (get(r, c) * precision) != (long) (matrix.get(r, c) * precision)) {
+		if ((this.data != null) && (matrix.data != null)) {
+			final double other[] = matrix.data;
+			for (int i = 0; i < this.data.length; i++) {
+				if ((long) (this.data[i] * precision) != (long) (other[i] * precision)) {
 					return false;
 				}
 			}
+		} else {
+			for (int r = 0; r < this.rows; r++) {
+				for (int c = 0; c < this.cols; c++) {
+					if ((long) (getUnchecked(r, c) * precision) != (long) (matrix
+							.getUnchecked(r, c) * precision)) {
+						return false;
+					}
+				}
+			}
 		}
 
 		return true;
 	}
 
 	/**
-	 * 
+	 *
 	 * @param array
 	 * @param index
 	 * @return The new index after this matrix has been read.
 	 */
 	public int fromPackedArray(final Double[] array, int index) {
 
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				this.matrix[r][c] = array[index++];
-			}
+		for (int i = 0; i < this.data.length; i++) {
+			this.data[i] = array[index++];
 		}
 
 		return index;
 	}
 
+	/**
+	 * Read this matrix from a primitive array.
+	 * @param array The array to read from.
+	 * @param index The index to start reading at.
+	 * @return The new index after this matrix has been read.
+	 */
+	public int fromPackedArray(final double array[], final int index) {
+		System.arraycopy(array, index, this.data, 0, this.data.length);
+		return index + this.data.length;
+	}
+
 	public double get(final int row, final int col) {
 		validate(row, col);
-		return this.matrix[row][col];
+		return this.data[row * this.cols + col];
 	}
 
 	public Matrix getCol(final int col) {
-		if (col > getCols()) {
+		if ((col >= getCols()) || (col < 0)) {
 			throw new MatrixError("Can't get column #" + col
 					+ " because it does not exist.");
 		}
 
-		final double newMatrix[][] = new double[getRows()][1];
+		final double newMatrix[] = new double[this.rows];
 
-		for (int row = 0; row < getRows(); row++) {
-			newMatrix[row][0] = this.matrix[row][col];
+		for (int row = 0, index = col; row < this.rows; row++, index += this.cols) {
+			newMatrix[row] = this.data[index];
 		}
 
-		return new Matrix(newMatrix);
+		return new Matrix(this.rows, 1, newMatrix);
+	}
+
+	/**
+	 * Get a view of a column.  No values are copied, the view refers to
+	 * this matrix.
+	 * @param col The column.
+	 * @return A view of the column.
+	 */
+	public VectorView getColView(final int col) {
+		if ((col >= getCols()) || (col < 0)) {
+			throw new MatrixError("Can't get column #" + col
+					+ " because it does not exist.");
+		}
+
+		return new VectorView(this.data, col, this.cols, this.rows);
 	}
 
 	public int getCols() {
-		return this.matrix[0].length;
+		return this.cols;
+	}
+
+	/**
+	 * Get the backing array.  The values are stored row-major, and
+	 * changes to the returned array are reflected in this matrix.
+	 * @return The backing array.
+	 */
+	public double[] getData() {
+		return this.data;
 	}
 
 	public Matrix getRow(final int row) {
-		if (row > getRows()) {
+		if ((row >= getRows()) || (row < 0)) {
 			throw new MatrixError("Can't get row #" + row
 					+ " because it does not exist.");
 		}
 
-		final double newMatrix[][] = new double[1][getCols()];
+		final double newMatrix[] = new double[this.cols];
+		System.arraycopy(this.data, row * this.cols, newMatrix, 0, this.cols);
 
-		for (int col = 0; col < getCols(); col++) {
-			newMatrix[0][col] = this.matrix[row][col];
+		return new Matrix(1, this.cols, newMatrix);
+	}
+
+	/**
+	 * Get a view of a row.  No values are copied, the view refers to this
+	 * matrix.
+	 * @param row The row.
+	 * @return A view of the row.
+	 */
+	public VectorView getRowView(final int row) {
+		if ((row >= getRows()) || (row < 0)) {
+			throw new MatrixError("Can't get row #" + row
+					+ " because it does not exist.");
 		}
 
-		return new Matrix(newMatrix);
+		return new VectorView(this.data, row * this.cols, 1, this.cols);
 	}
 
 	public int getRows() {
-		return this.matrix.length;
+		return this.rows;
+	}
+
+	/**
+	 * Get a value without validating the row and column.
+	 * @param row The row.
+	 * @param col The column.
+	 * @return The value.
+	 */
+	public double getUnchecked(final int row, final int col) {
+		return this.data[row * this.cols + col];
+	}
+
+	/**
+	 * Determine if the values are stored off-heap, as in an OffHeapMatrix.
+	 * MatrixMath asks this rather than testing the class, so that the
+	 * off-heap code, which uses a preview API, is only loaded by programs
+	 * that use off-heap matrices.
+	 * @return True if the values are off-heap.
+	 */
+	boolean isOffHeap() {
+		return false;
 	}
 
 	public boolean isVector() {
@@ -179,61 +312,138 @@ public class Matrix implements Cloneable, Serializable {
 	}
 
 	public boolean isZero() {
-		for (int row = 0; row < getRows(); row++) {
-			for (int col = 0; col < getCols(); col++) {
-				if (this.matrix[row][col] != 0) {
-					return false;
-				}
+		for (int i = 0; i < this.data.length; i++) {
+			if (this.data[i] != 0) {
+				return false;
 			}
 		}
 		return true;
 	}
 
 	public void ramdomize(final double min, final double max) {
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				this.matrix[r][c] = (Math.random() * (max - min)) + min;
-			}
+		ramdomize(min, max, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Fill the matrix with random values, using the specified generator so
+	 * that the values can be reproduced.
+	 * @param min The smallest value.
+	 * @param max The largest value.
+	 * @param random The random number generator to use.
+	 */
+	public void ramdomize(final double min, final double max,
+			final RandomGenerator random) {
+		for (int i = 0; i < this.data.length; i++) {
+			this.data[i] = (random.nextDouble() * (max - min)) + min;
 		}
 	}
 
 	public void set(final int row, final int col, final double value) {
 		validate(row, col);
-		if (Double.isInfinite(value) || Double.isNaN(value)) {
-			throw new MatrixError("Trying to assign invalud number to matrix: "
-					+ value);
-		}
-		this.matrix[row][col] = value;
+		checkValue(value);
+		this.data[row * this.cols + col] = value;
+	}
+
+	/**
+	 * Set a value without validating the row and column, or checking the
+	 * value.
+	 * @param row The row.
+	 * @param col The column.
+	 * @param value The new value.
+	 */
+	public void setUnchecked(final int row, final int col, final double value) {
+		this.data[row * this.cols + col] = value;
 	}
 
 	public int size() {
-		return this.matrix[0].length * this.matrix.length;
+		return this.rows * this.cols;
 	}
 
 	public double sum() {
 		double result = 0;
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				result += this.matrix[r][c];
-			}
+		for (int i = 0; i < this.data.length; i++) {
+			result += this.data[i];
 		}
 		return result;
 	}
 
 	public Double[] toPackedArray() {
-		final Double result[] = new Double[getRows() * getCols()];
+		final Double result[] = new Double[this.data.length];
 
-		int index = 0;
-		for (int r = 0; r < getRows(); r++) {
-			for (int c = 0; c < getCols(); c++) {
-				result[index++] = this.matrix[r][c];
-			}
+		for (int i = 0; i < this.data.length; i++) {
+			result[i] = this.data[i];
 		}
 
 		return result;
 	}
 
-	private void validate(final int row, final int col) {
+	/**
+	 * Write this matrix to a primitive array.
+	 * @param array The array to write to.
+	 * @param index The index to start writing at.
+	 * @return The new index after this matrix has been written.
+	 */
+	public int toPackedArray(final double array[], final int index) {
+		System.arraycopy(this.data, 0, array, index, this.data.length);
+		return index + this.data.length;
+	}
+
+	/**
+	 * Serialize this matrix through its compact binary form.
+	 * @return The object to serialize in place of this matrix.
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		return new MatrixProxy(this);
+	}
+
+	/**
+	 * Read a matrix serialized in the old form, where the values were held
+	 * in a double[][] field named matrix.  Matrices serialized since then
+	 * are written as a MatrixProxy and never reach this method.
+	 * @param in The stream to read from.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		final ObjectInputStream.GetField fields = in.readFields();
+		try {
+			this.legacy = (double[][]) fields.get("matrix", null);
+		} catch (final IllegalArgumentException e) {
+			throw new InvalidObjectException(
+					"A matrix must be serialized through MatrixProxy.");
+		}
+		if ((this.legacy == null) || (this.legacy.length == 0)
+				|| (this.legacy[0] == null)) {
+			throw new InvalidObjectException("The serialized matrix has no values.");
+		}
+		for (final double row[] : this.legacy) {
+			if ((row == null) || (row.length != this.legacy[0].length)) {
+				throw new InvalidObjectException(
+						"The rows of the serialized matrix differ in length.");
+			}
+		}
+	}
+
+	/**
+	 * Replace a matrix read from the old serialized form with one holding
+	 * its values in a single array.
+	 * @return The matrix.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		try {
+			return new Matrix(this.legacy);
+		} catch (final MatrixError e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+
+	void checkValue(final double value) {
+		if (Double.isInfinite(value) || Double.isNaN(value)) {
+			throw new MatrixError("Trying to assign invalud number to matrix: "
+					+ value);
+		}
+	}
+
+	void validate(final int row, final int col) {
 		if ((row >= getRows()) || (row < 0)) {
 			throw new MatrixError("The row:" + row + " is out of range:"
 					+ getRows());
@@ -245,4 +455,4 @@ public class Matrix implements Cloneable, Serializable {
 		}
 	}
 
-}
\ No newline at end of file
+}
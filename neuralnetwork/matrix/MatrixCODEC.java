@@ -1,5 +1,6 @@
 package com.aurora.ai.neuralnetwork.matrix;
 
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralLayer;
 import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
 
@@ -9,6 +10,10 @@ import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
  * neural network must be looked at as an array of doubles for
  * genetic algorithms and simulated annealing.
  * 
+ * Both boxed Double and primitive double arrays are supported.
+ * The primitive forms can write into an array supplied by the
+ * caller, so repeated round trips do not allocate.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
@@ -31,6 +36,28 @@ public class MatrixCODEC {
 			// now the weight matrix(if it exists)
 			if (layer.getNext() != null) {
 				index = layer.getMatrix().fromPackedArray(array, index);
+				layer.matrixChanged();
+			}
+		}
+	}
+
+	/**
+	 * Use a primitive array to populate the memory of the neural network.
+	 * 
+	 * @param array
+	 *            An array of doubles.
+	 * @param network
+	 *            The network to populate.
+	 */
+	public static void arrayToNetwork(final double array[],
+			final NeuralNetwork network) {
+
+		int index = 0;
+
+		for (final NeuralLayer layer : network.getLayers()) {
+			if (layer.getNext() != null) {
+				index = layer.getMatrix().fromPackedArray(array, index);
+				layer.matrixChanged();
 			}
 		}
 	}
@@ -74,4 +101,39 @@ public class MatrixCODEC {
 		return result;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Convert to a primitive array, reusing the array provided if it is
+	 * not null.
+	 * 
+	 * @param network
+	 *            The network to convert.
+	 * @param result
+	 *            The array to write to, or null to allocate one.
+	 * @return The memory of the neuron.
+	 */
+	public static double[] networkToArray(final NeuralNetwork network,
+			final double result[]) {
+		final int size = network.getWeightMatrixSize();
+		final double array[];
+
+		if (result == null) {
+			array = new double[size];
+		} else if (result.length < size) {
+			throw new MatrixError("Can't pack a network of size " + size
+					+ " into an array of size " + result.length + ".");
+		} else {
+			array = result;
+		}
+
+		int index = 0;
+
+		for (final NeuralLayer layer : network.getLayers()) {
+			if (layer.getNext() != null) {
+				index = layer.getMatrix().toPackedArray(array, index);
+			}
+		}
+
+		return array;
+	}
+
+}
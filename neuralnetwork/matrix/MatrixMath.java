@@ -1,5 +1,9 @@
 package com.aurora.ai.neuralnetwork.matrix;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.aurora.ai.neuralnetwork.exception.MatrixError;
 import com.aurora.ai.neuralnetwork.som.SelfOrganizingMap;
 
@@ -7,12 +11,80 @@ import com.aurora.ai.neuralnetwork.som.SelfOrganizingMap;
  * MatrixMath: This class can perform many different mathematical
  * operations on matrixes.
  * 
+ * Most operations can optionally be given a ForkJoinPool.  When
+ * a pool is provided and the operation is large enough, the rows
+ * are split into blocks that are processed in parallel.  Without
+ * a pool, or for small matrices, the operation runs on the calling
+ * thread.
+ * 
+ * The inner loops of the element-wise operations, dot products and
+ * matrix-vector products are provided by Kernels, which will use the
+ * JDK Vector API when it is available.
+ * 
+ * The in-place updates, the rank-1 and rank-k updates and the
+ * matrix-vector products work directly on the memory of an
+ * OffHeapMatrix, through OffHeapMath.  That class is only loaded when
+ * an off-heap matrix is used, so this one does not depend on the
+ * preview API that OffHeapMatrix needs.  Other operations on matrices that are not stored in a Java array,
+ * such as an OffHeapMatrix or a FloatMatrix, copy them to an array
+ * first, and copy any result back.  Dot products and vector lengths
+ * read them in place.  The products of a FloatMatrix are added up as
+ * doubles.
+ * 
  * @author Eke Stephen
  * @version 1.0
  */
 public class MatrixMath {
 
+	/**
+	 * The values of a matrix, however they are stored, read a run at a
+	 * time by the blocked loops.  The index counts values from the start
+	 * of the matrix, row by row.
+	 */
+	interface RowSource {
+
+		/**
+		 * y[yOffset+i] += alpha * m[index+i] for i from 0 to length.
+		 */
+		void axpy(double alpha, long index, double y[], int yOffset,
+				int length);
+	}
+
+	/**
+	 * The default number of rows of the first matrix in one multiply tile.
+	 */
+	public static final int DEFAULT_ROW_TILE = 64;
+
+	/**
+	 * The default length of the shared dimension in one multiply tile.
+	 */
+	public static final int DEFAULT_INNER_TILE = 128;
+
+	/**
+	 * The default number of columns of the second matrix in one multiply
+	 * tile.  Together with DEFAULT_INNER_TILE this keeps the tile of the
+	 * second matrix at 256KB, small enough to stay in cache.
+	 */
+	public static final int DEFAULT_COL_TILE = 256;
+
+	/**
+	 * The kernels that perform the inner loops.
+	 */
+	private static final Kernels KERNELS = Kernels.INSTANCE;
+
 	public static Matrix add(final Matrix a, final Matrix b) {
+		return add(a, b, null);
+	}
+
+	/**
+	 * Add two matrices, optionally in parallel.
+	 * @param a The first matrix.
+	 * @param b The second matrix.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The sum.
+	 */
+	public static Matrix add(final Matrix a, final Matrix b,
+			final ForkJoinPool pool) {
 		if (a.getRows() != b.getRows()) {
 			throw new MatrixError(
 					"To add the matrices they must have the same number of rows and columns.  Matrix a has "
@@ -29,25 +101,110 @@ public class MatrixMath {
 							+ b.getCols() + " cols.");
 		}
 
-		final double result[][] = new double[a.getRows()][a.getCols()];
+		if (!isHeap(a, b)) {
+			return add(heap(a), heap(b), pool);
+		}
 
-		for (int resultRow = 0; resultRow < a.getRows(); resultRow++) {
-			for (int resultCol = 0; resultCol < a.getCols(); resultCol++) {
-				result[resultRow][resultCol] = a.get(resultRow, resultCol)
-						+ b.get(resultRow, resultCol);
-			}
+		final double aData[] = a.data;
+		final double bData[] = b.data;
+		final double result[] = new double[aData.length];
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			KERNELS.add(aData, bData, result, startRow * cols, endRow * cols);
+		});
+
+		return new Matrix(a.rows, a.cols, result);
+	}
+
+	public static void addInPlace(final Matrix a, final Matrix b) {
+		addInPlace(a, b, null);
+	}
+
+	/**
+	 * Add the second matrix to the first, in place.
+	 * @param a The matrix to add to, it holds the sum afterwards.
+	 * @param b The matrix to add.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	public static void addInPlace(final Matrix a, final Matrix b,
+			final ForkJoinPool pool) {
+		checkSameSize(a, b, "add");
+
+		if (a.isOffHeap()) {
+			OffHeapMath.axpy(1, b, a, pool);
+			return;
 		}
 
-		return new Matrix(result);
+		if (!isHeap(a, b)) {
+			final Matrix staged = heap(a);
+			addInPlace(staged, heap(b), pool);
+			copy(staged, a);
+			return;
+		}
+
+		final double aData[] = a.data;
+		final double bData[] = b.data;
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			KERNELS.add(aData, bData, aData, startRow * cols, endRow * cols);
+		});
 	}
 
-	public static void copy(final Matrix source, final Matrix target) {
-		for (int row = 0; row < source.getRows(); row++) {
-			for (int col = 0; col < source.getCols(); col++) {
-				target.set(row, col, source.get(row, col));
-			}
+	public static void axpy(final double alpha, final Matrix x, final Matrix y) {
+		axpy(alpha, x, y, null);
+	}
+
+	/**
+	 * Add a multiple of one matrix to another, in place.  This computes
+	 * y = y + alpha * x.
+	 * @param alpha The amount to multiply x by.
+	 * @param x The matrix to add.
+	 * @param y The matrix to add to, it holds the result afterwards.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	public static void axpy(final double alpha, final Matrix x,
+			final Matrix y, final ForkJoinPool pool) {
+		checkSameSize(x, y, "add");
+
+		if (y.isOffHeap()) {
+			OffHeapMath.axpy(alpha, x, y, pool);
+			return;
+		}
+
+		if (!isHeap(x, y)) {
+			final Matrix staged = heap(y);
+			axpy(alpha, heap(x), staged, pool);
+			copy(staged, y);
+			return;
 		}
 
+		final double xData[] = x.data;
+		final double yData[] = y.data;
+		final int cols = x.cols;
+
+		RowTask.run(pool, x.rows, cols, (startRow, endRow) -> {
+			KERNELS.axpy(alpha, xData, startRow * cols, yData, startRow * cols,
+					(endRow - startRow) * cols);
+		});
+	}
+
+	public static void copy(final Matrix source, final Matrix target) {
+		if (source.size() != target.size()) {
+			throw new MatrixError("Can't copy a matrix of size "
+					+ source.size() + " to a matrix of size " + target.size()
+					+ ".");
+		}
+		if (source.isOffHeap() && target.isOffHeap()) {
+			OffHeapMath.copy(source, target);
+		} else if ((target.data == null) && (source.data != null)) {
+			target.fromPackedArray(source.data, 0);
+		} else if (target.data == null) {
+			target.fromPackedArray(heap(source).data, 0);
+		} else {
+			source.toPackedArray(target.data, 0);
+		}
 	}
 
 	public static void copy(final SelfOrganizingMap bestnet,
@@ -62,22 +219,24 @@ public class MatrixMath {
 					+ " from matrix, it only has " + matrix.getCols()
 					+ " columns.");
 		}
-		final double newMatrix[][] = new double[matrix.getRows()][matrix
-				.getCols() - 1];
-
-		for (int row = 0; row < matrix.getRows(); row++) {
-			int targetCol = 0;
-
-			for (int col = 0; col < matrix.getCols(); col++) {
-				if (col != deleted) {
-					newMatrix[row][targetCol] = matrix.get(row, col);
-					targetCol++;
-				}
+		if (!isHeap(matrix, matrix)) {
+			return deleteCol(heap(matrix), deleted);
+		}
 
-			}
+		final int cols = matrix.cols;
+		final int tail = cols - deleted - 1;
+		final double source[] = matrix.data;
+		final double newMatrix[] = new double[matrix.rows * (cols - 1)];
 
+		int target = 0;
+		for (int row = 0, index = 0; row < matrix.rows; row++, index += cols) {
+			System.arraycopy(source, index, newMatrix, target, deleted);
+			target += deleted;
+			System.arraycopy(source, index + deleted + 1, newMatrix, target,
+					tail);
+			target += tail;
 		}
-		return new Matrix(newMatrix);
+		return new Matrix(matrix.rows, cols - 1, newMatrix);
 	}
 
 	public static Matrix deleteRow(final Matrix matrix, final int deleted) {
@@ -86,28 +245,47 @@ public class MatrixMath {
 					+ " from matrix, it only has " + matrix.getRows()
 					+ " rows.");
 		}
-		final double newMatrix[][] = new double[matrix.getRows() - 1][matrix
-				.getCols()];
-		int targetRow = 0;
-		for (int row = 0; row < matrix.getRows(); row++) {
-			if (row != deleted) {
-				for (int col = 0; col < matrix.getCols(); col++) {
-					newMatrix[targetRow][col] = matrix.get(row, col);
-				}
-				targetRow++;
-			}
+		if (!isHeap(matrix, matrix)) {
+			return deleteRow(heap(matrix), deleted);
 		}
-		return new Matrix(newMatrix);
+
+		final int cols = matrix.cols;
+		final double newMatrix[] = new double[(matrix.rows - 1) * cols];
+
+		// the rows before the deleted row, and then the rows after it
+		System.arraycopy(matrix.data, 0, newMatrix, 0, deleted * cols);
+		System.arraycopy(matrix.data, (deleted + 1) * cols, newMatrix,
+				deleted * cols, (matrix.rows - deleted - 1) * cols);
+		return new Matrix(matrix.rows - 1, cols, newMatrix);
 	}
 
 	public static Matrix divide(final Matrix a, final double b) {
-		final double result[][] = new double[a.getRows()][a.getCols()];
-		for (int row = 0; row < a.getRows(); row++) {
-			for (int col = 0; col < a.getCols(); col++) {
-				result[row][col] = a.get(row, col) / b;
-			}
+		return divide(a, b, null);
+	}
+
+	/**
+	 * Divide every element of a matrix by a number, optionally in parallel.
+	 * @param a The matrix.
+	 * @param b The number to divide by.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The result.
+	 */
+	public static Matrix divide(final Matrix a, final double b,
+			final ForkJoinPool pool) {
+		if (!isHeap(a, a)) {
+			return divide(heap(a), b, pool);
 		}
-		return new Matrix(result);
+
+		final double aData[] = a.data;
+		final double result[] = new double[aData.length];
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			for (int i = startRow * cols; i < endRow * cols; i++) {
+				result[i] = aData[i] / b;
+			}
+		});
+		return new Matrix(a.rows, a.cols, result);
 	}
 
 	public static double dotProduct(final Matrix a, final Matrix b) {
@@ -116,19 +294,37 @@ public class MatrixMath {
 					"To take the dot product, both matrices must be vectors.");
 		}
 
-		final Double aArray[] = a.toPackedArray();
-		final Double bArray[] = b.toPackedArray();
+		return dotProduct(vectorView(a), vectorView(b));
+	}
 
-		if (aArray.length != bArray.length) {
+	/**
+	 * Take the dot product of two vectors.  The vectors may be rows or
+	 * columns of a matrix, no values are copied.
+	 * @param a The first vector.
+	 * @param b The second vector.
+	 * @return The dot product.
+	 */
+	public static double dotProduct(final VectorView a, final VectorView b) {
+		if (a.length != b.length) {
 			throw new MatrixError(
 					"To take the dot product, both matrices must be of the same length.");
 		}
 
+		final double aArray[] = a.data;
+		final double bArray[] = b.data;
+		final int length = a.length;
 		double result = 0;
-		final int length = aArray.length;
 
-		for (int i = 0; i < length; i++) {
-			result += aArray[i] * bArray[i];
+		if ((aArray == null) || (bArray == null)) {
+			for (int i = 0; i < length; i++) {
+				result += a.load(i) * b.load(i);
+			}
+		} else if ((a.stride == 1) && (b.stride == 1)) {
+			result = KERNELS.dot(aArray, a.offset, bArray, b.offset, length);
+		} else {
+			for (int i = 0, ia = a.offset, ib = b.offset; i < length; i++, ia += a.stride, ib += b.stride) {
+				result += aArray[ia] * bArray[ib];
+			}
 		}
 
 		return result;
@@ -142,46 +338,900 @@ public class MatrixMath {
 		final Matrix result = new Matrix(size, size);
 
 		for (int i = 0; i < size; i++) {
-			result.set(i, i, 1);
+			result.data[i * size + i] = 1;
 		}
 
 		return result;
 	}
 
-	public static Matrix multiply(final Matrix a, final double b) {
-		final double result[][] = new double[a.getRows()][a.getCols()];
-		for (int row = 0; row < a.getRows(); row++) {
-			for (int col = 0; col < a.getCols(); col++) {
-				result[row][col] = a.get(row, col) * b;
+	public static void momentumUpdate(final Matrix weights,
+			final Matrix accumulated, final Matrix delta,
+			final double learnRate, final double momentum) {
+		momentumUpdate(weights, accumulated, delta, learnRate, momentum, null);
+	}
+
+	/**
+	 * Apply a learning step with momentum in a single pass over the
+	 * matrices.  For each element this computes
+	 * delta = learnRate * accumulated + momentum * delta, adds the new
+	 * delta to the weights and clears the accumulated value.
+	 * 
+	 * The new values are checked as they are written, rather than in a
+	 * second pass, so if one of them is NaN or infinite the update is
+	 * completed before the MatrixError is thrown.
+	 * 
+	 * @param weights
+	 *            The weights to update.
+	 * @param accumulated
+	 *            The accumulated deltas, cleared afterwards.
+	 * @param delta
+	 *            The deltas from the previous step, replaced by the deltas
+	 *            from this step.
+	 * @param learnRate
+	 *            The learning rate.
+	 * @param momentum
+	 *            The momentum.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void momentumUpdate(final Matrix weights,
+			final Matrix accumulated, final Matrix delta,
+			final double learnRate, final double momentum,
+			final ForkJoinPool pool) {
+		checkSameSize(weights, accumulated, "update");
+		checkSameSize(weights, delta, "update");
+
+		// x * 0 is zero unless x is NaN or infinite, so each block adds up
+		// a check value instead of testing every element
+		final AtomicBoolean invalid = new AtomicBoolean();
+		if ((weights instanceof FloatMatrix) && isHeap(accumulated, delta)) {
+			// single precision weights, the deltas are kept as doubles
+			final float w[] = ((FloatMatrix) weights).values;
+			final double acc[] = accumulated.data;
+			final double d[] = delta.data;
+			final int cols = weights.cols;
+
+			RowTask.run(pool, weights.rows, cols, (startRow, endRow) -> {
+				double check = 0;
+				for (int i = startRow * cols; i < endRow * cols; i++) {
+					final double change = learnRate * acc[i] + momentum * d[i];
+					d[i] = change;
+					w[i] = (float) (w[i] + change);
+					acc[i] = 0;
+					check += w[i] * 0;
+				}
+				if (check != 0) {
+					invalid.set(true);
+				}
+			});
+			checkUpdate(invalid);
+			return;
+		}
+
+		if (weights.isOffHeap() && isHeap(accumulated, delta)) {
+			OffHeapMath.momentumUpdate(weights, accumulated, delta, learnRate,
+					momentum, invalid, pool);
+			checkUpdate(invalid);
+			return;
+		}
+
+		if (!isHeap(weights, accumulated) || !isHeap(delta, delta)) {
+			final Matrix stagedWeights = heap(weights);
+			final Matrix stagedAccumulated = heap(accumulated);
+			final Matrix stagedDelta = heap(delta);
+			momentumUpdate(stagedWeights, stagedAccumulated, stagedDelta,
+					learnRate, momentum, pool);
+			copy(stagedWeights, weights);
+			copy(stagedAccumulated, accumulated);
+			copy(stagedDelta, delta);
+			return;
+		}
+
+		final double w[] = weights.data;
+		final double acc[] = accumulated.data;
+		final double d[] = delta.data;
+		final int cols = weights.cols;
+
+		RowTask.run(pool, weights.rows, cols, (startRow, endRow) -> {
+			double check = 0;
+			for (int i = startRow * cols; i < endRow * cols; i++) {
+				final double change = learnRate * acc[i] + momentum * d[i];
+				d[i] = change;
+				w[i] += change;
+				acc[i] = 0;
+				check += w[i] * 0;
+			}
+			if (check != 0) {
+				invalid.set(true);
 			}
+		});
+		checkUpdate(invalid);
+	}
+
+	/**
+	 * Throw an error if a momentum update wrote NaN or infinity.
+	 */
+	private static void checkUpdate(final AtomicBoolean invalid) {
+		if (invalid.get()) {
+			throw new MatrixError(
+					"Trying to assign invalud number to matrix: the update produced NaN or infinity.");
+		}
+	}
+
+	public static Matrix multiply(final Matrix a, final double b) {
+		return multiply(a, b, null);
+	}
+
+	/**
+	 * Multiply every element of a matrix by a number, optionally in
+	 * parallel.
+	 * @param a The matrix.
+	 * @param b The number to multiply by.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The result.
+	 */
+	public static Matrix multiply(final Matrix a, final double b,
+			final ForkJoinPool pool) {
+		if (!isHeap(a, a)) {
+			return multiply(heap(a), b, pool);
 		}
-		return new Matrix(result);
+
+		final double aData[] = a.data;
+		final double result[] = new double[aData.length];
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			KERNELS.scale(aData, b, result, startRow * cols, endRow * cols);
+		});
+		return new Matrix(a.rows, a.cols, result);
 	}
 
 	public static Matrix multiply(final Matrix a, final Matrix b) {
+		return multiply(a, b, DEFAULT_ROW_TILE, DEFAULT_INNER_TILE,
+				DEFAULT_COL_TILE, null);
+	}
+
+	/**
+	 * Multiply two matrices, optionally in parallel, using the default tile
+	 * sizes.
+	 * @param a The first matrix.
+	 * @param b The second matrix.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The product.
+	 */
+	public static Matrix multiply(final Matrix a, final Matrix b,
+			final ForkJoinPool pool) {
+		return multiply(a, b, DEFAULT_ROW_TILE, DEFAULT_INNER_TILE,
+				DEFAULT_COL_TILE, pool);
+	}
+
+	public static Matrix multiply(final Matrix a, final Matrix b,
+			final int rowTile, final int innerTile, final int colTile) {
+		return multiply(a, b, rowTile, innerTile, colTile, null);
+	}
+
+	/**
+	 * Multiply two matrices using the specified tile sizes.  The product
+	 * is computed one tile at a time so that the part of each matrix
+	 * being worked on stays in cache.  Each element is still summed in the
+	 * same order as the textbook algorithm, so the tile sizes do not
+	 * change the result.
+	 * 
+	 * @param a
+	 *            The first matrix.
+	 * @param b
+	 *            The second matrix.
+	 * @param rowTile
+	 *            The number of rows of a in one tile.
+	 * @param innerTile
+	 *            The number of columns of a, and rows of b, in one tile.
+	 * @param colTile
+	 *            The number of columns of b in one tile.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @return The product.
+	 */
+	public static Matrix multiply(final Matrix a, final Matrix b,
+			final int rowTile, final int innerTile, final int colTile,
+			final ForkJoinPool pool) {
 		if (a.getCols() != b.getRows()) {
 			throw new MatrixError(
 					"To use ordinary matrix multiplication the number of columns on the first matrix must mat the number of rows on the second.");
 		}
 
-		final double result[][] = new double[a.getRows()][b.getCols()];
+		if ((rowTile < 1) || (innerTile < 1) || (colTile < 1)) {
+			throw new MatrixError("Tile sizes must be at least 1.");
+		}
+
+		if (!isHeap(a, b)) {
+			return multiply(heap(a), heap(b), rowTile, innerTile, colTile,
+					pool);
+		}
+
+		final double result[] = new double[a.rows * b.cols];
+		multiplyTiled(a, b, result, rowTile, innerTile, colTile, pool);
+		return new Matrix(a.rows, b.cols, result);
+	}
+
+	public static Matrix multiply(final Matrix a, final boolean transposeA,
+			final Matrix b, final boolean transposeB) {
+		return multiply(a, transposeA, b, transposeB, null);
+	}
+
+	/**
+	 * Multiply two matrices, either of which may be transposed.  The
+	 * transposes are never formed, each matrix is read in the layout it is
+	 * stored in.
+	 * 
+	 * @param a
+	 *            The first matrix.
+	 * @param transposeA
+	 *            True to multiply by the transpose of a.
+	 * @param b
+	 *            The second matrix.
+	 * @param transposeB
+	 *            True to multiply by the transpose of b.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @return The product.
+	 */
+	public static Matrix multiply(final Matrix a, final boolean transposeA,
+			final Matrix b, final boolean transposeB, final ForkJoinPool pool) {
+		final int rows = transposeA ? a.getCols() : a.getRows();
+		final int inner = transposeA ? a.getRows() : a.getCols();
+		final int cols = transposeB ? b.getRows() : b.getCols();
+
+		if (inner != (transposeB ? b.getCols() : b.getRows())) {
+			throw new MatrixError(
+					"To use ordinary matrix multiplication the number of columns on the first matrix must mat the number of rows on the second.");
+		}
+
+		if (!transposeA && !transposeB) {
+			return multiply(a, b, pool);
+		}
+
+		if (!isHeap(a, b)) {
+			return multiply(heap(a), transposeA, heap(b), transposeB, pool);
+		}
 
-		for (int resultRow = 0; resultRow < a.getRows(); resultRow++) {
-			for (int resultCol = 0; resultCol < b.getCols(); resultCol++) {
-				double value = 0;
+		final double aData[] = a.data;
+		final double bData[] = b.data;
+		final double result[] = new double[rows * cols];
 
-				for (int i = 0; i < a.getCols(); i++) {
+		RowTask.run(pool, rows, (long) inner * cols, (startRow, endRow) -> {
+			multiplyTransposed(aData, transposeA, bData, transposeB, result,
+					startRow, endRow, rows, inner, cols);
+		});
 
-					value += a.get(resultRow, i) * b.get(i, resultCol);
+		return new Matrix(rows, cols, result);
+	}
+
+	public static Matrix multiply(final SparseMatrix a, final Matrix b) {
+		return multiply(a, b, null);
+	}
+
+	/**
+	 * Multiply a sparse matrix by a matrix.  Each nonzero value of a adds a
+	 * scaled row of b to the result, so the cost grows with the number of
+	 * nonzeros rather than the size of a.
+	 * 
+	 * @param a
+	 *            The sparse matrix.
+	 * @param b
+	 *            The second matrix.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @return The product.
+	 */
+	public static Matrix multiply(final SparseMatrix a, final Matrix b,
+			final ForkJoinPool pool) {
+		if (a.getCols() != b.getRows()) {
+			throw new MatrixError(
+					"To use ordinary matrix multiplication the number of columns on the first matrix must mat the number of rows on the second.");
+		}
+
+		if (!isHeap(b, b)) {
+			return multiply(a, heap(b), pool);
+		}
+
+		final double bData[] = b.data;
+		final int cols = b.cols;
+		final double result[] = new double[a.rows * cols];
+		final long workPerRow = Math.max(1, (long) a.getNonZeroCount()
+				* cols / Math.max(1, a.rows));
+
+		RowTask.run(pool, a.rows, workPerRow, (startRow, endRow) -> {
+			for (int r = startRow; r < endRow; r++) {
+				for (int i = a.rowStart[r]; i < a.rowStart[r + 1]; i++) {
+					KERNELS.axpy(a.values[i], bData, a.columns[i] * cols,
+							result, r * cols, cols);
 				}
-				result[resultRow][resultCol] = value;
 			}
+		});
+
+		return new Matrix(a.rows, cols, result);
+	}
+
+	public static void multiplyInto(final Matrix a, final Matrix b,
+			final Matrix dest) {
+		multiplyInto(a, b, dest, null);
+	}
+
+	/**
+	 * Multiply two matrices, writing the product to an existing matrix
+	 * rather than allocating a new one.  The destination may not be either
+	 * of the matrices being multiplied.
+	 * 
+	 * @param a
+	 *            The first matrix.
+	 * @param b
+	 *            The second matrix.
+	 * @param dest
+	 *            The matrix to hold the product, its previous contents are
+	 *            overwritten.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void multiplyInto(final Matrix a, final Matrix b,
+			final Matrix dest, final ForkJoinPool pool) {
+		if (a.getCols() != b.getRows()) {
+			throw new MatrixError(
+					"To use ordinary matrix multiplication the number of columns on the first matrix must mat the number of rows on the second.");
 		}
 
-		return new Matrix(result);
+		if ((dest.getRows() != a.getRows()) || (dest.getCols() != b.getCols())) {
+			throw new MatrixError("The destination matrix must be "
+					+ a.getRows() + " x " + b.getCols() + " but is "
+					+ dest.getRows() + " x " + dest.getCols() + ".");
+		}
+
+		if ((dest == a) || (dest == b)
+				|| ((dest.data != null) && ((dest.data == a.data) || (dest.data == b.data)))) {
+			throw new MatrixError(
+					"The destination matrix can't also be one of the matrices being multiplied.");
+		}
+
+		if (!isHeap(a, b) || !isHeap(dest, dest)) {
+			final Matrix staged = new Matrix(dest.rows, dest.cols);
+			multiplyTiled(heap(a), heap(b), staged.data, DEFAULT_ROW_TILE,
+					DEFAULT_INNER_TILE, DEFAULT_COL_TILE, pool);
+			copy(staged, dest);
+			return;
+		}
+
+		dest.clear();
+		multiplyTiled(a, b, dest.data, DEFAULT_ROW_TILE, DEFAULT_INNER_TILE,
+				DEFAULT_COL_TILE, pool);
+	}
+
+	/**
+	 * Multiply a matrix by a vector, y = a * x.
+	 * @param a The matrix.
+	 * @param x The vector, one value for each column of a.
+	 * @param y The result, one value for each row of a.
+	 */
+	public static void multiplyVector(final Matrix a, final double x[],
+			final double y[]) {
+		if ((x.length != a.getCols()) || (y.length < a.getRows())) {
+			throw new MatrixError("Can't multiply a " + a.getRows() + " x "
+					+ a.getCols() + " matrix by a vector of " + x.length
+					+ " into a vector of " + y.length + ".");
+		}
+		if (a instanceof FloatMatrix) {
+			KERNELS.gemv(((FloatMatrix) a).values, a.rows, a.cols, x, y);
+		} else if (a.isOffHeap()) {
+			OffHeapMath.multiplyVector(a, x, y);
+		} else if (a.data == null) {
+			for (int r = 0; r < a.rows; r++) {
+				double sum = 0;
+				for (int c = 0; c < a.cols; c++) {
+					sum += a.getUnchecked(r, c) * x[c];
+				}
+				y[r] = sum;
+			}
+		} else {
+			KERNELS.gemv(a.data, a.rows, a.cols, x, y);
+		}
+	}
+
+	/**
+	 * Multiply the transpose of a matrix by a vector, y = transpose(a) * x.
+	 * The transpose is never formed, the rows of a are read in order.
+	 * @param a The matrix.
+	 * @param x The vector, one value for each row of a.
+	 * @param y The result, one value for each column of a.
+	 */
+	public static void multiplyTransposedVector(final Matrix a,
+			final double x[], final double y[]) {
+		if ((x.length != a.getRows()) || (y.length < a.getCols())) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols()
+					+ " matrix by a vector of " + x.length
+					+ " into a vector of " + y.length + ".");
+		}
+		if (a instanceof FloatMatrix) {
+			KERNELS.gemvTransposed(((FloatMatrix) a).values, a.rows, a.cols,
+					x, y);
+		} else if (a.isOffHeap()) {
+			OffHeapMath.multiplyTransposedVector(a, x, y);
+		} else if (a.data == null) {
+			Arrays.fill(y, 0, a.cols, 0);
+			for (int r = 0; r < a.rows; r++) {
+				for (int c = 0; c < a.cols; c++) {
+					y[c] += x[r] * a.getUnchecked(r, c);
+				}
+			}
+		} else {
+			KERNELS.gemvTransposed(a.data, a.rows, a.cols, x, y);
+		}
+	}
+
+	/**
+	 * Multiply the transpose of a matrix by a vector that is extended with
+	 * a one, y = transpose(a) * [x, 1].  This is how a layer of a neural
+	 * network computes its outputs, where the last row of a holds the
+	 * thresholds.  The extended vector is never formed.
+	 * @param a The matrix.
+	 * @param x The vector, one value for each row of a except the last.
+	 * @param y The result, one value for each column of a.
+	 */
+	public static void multiplyTransposedVectorWithBias(final Matrix a,
+			final double x[], final double y[]) {
+		if ((x.length != a.getRows() - 1) || (y.length < a.getCols())) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols()
+					+ " matrix by a vector of " + x.length
+					+ " and a bias into a vector of " + y.length + ".");
+		}
+		if (a instanceof FloatMatrix) {
+			KERNELS.gemvTransposedBias(((FloatMatrix) a).values, a.rows,
+					a.cols, x, y);
+		} else if (a.isOffHeap()) {
+			OffHeapMath.multiplyTransposedVectorWithBias(a, x, y);
+		} else if (a.data == null) {
+			Arrays.fill(y, 0, a.cols, 0);
+			for (int r = 0; r < a.rows; r++) {
+				final double value = (r < x.length) ? x[r] : 1;
+				for (int c = 0; c < a.cols; c++) {
+					y[c] += value * a.getUnchecked(r, c);
+				}
+			}
+		} else {
+			KERNELS.gemvTransposedBias(a.data, a.rows, a.cols, x, y);
+		}
+	}
+
+	/**
+	 * Multiply the transpose of a matrix stored in part of an array by a
+	 * vector that is extended with a one, y = transpose(m) * [x, 1].  This
+	 * is multiplyTransposedVectorWithBias for weights that are not held in
+	 * a Matrix, such as several weight matrices packed into one array.
+	 * @param m The array holding the matrix.
+	 * @param offset Where the matrix starts in the array.
+	 * @param rows The number of rows, including the bias row.
+	 * @param cols The number of columns.
+	 * @param x The vector, rows - 1 values.
+	 * @param y The result, cols values.
+	 */
+	public static void multiplyTransposedVectorWithBias(final double m[],
+			final int offset, final int rows, final int cols,
+			final double x[], final double y[]) {
+		if ((rows < 1) || (offset < 0) || (cols < 0)
+				|| ((long) offset + (long) rows * cols > m.length)
+				|| (x.length < rows - 1) || (y.length < cols)) {
+			throw new MatrixError("Can't multiply the transpose of a " + rows
+					+ " x " + cols + " matrix at " + offset + " in an array of "
+					+ m.length + " by a vector of " + x.length
+					+ " and a bias into a vector of " + y.length + ".");
+		}
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows - 1; r++) {
+			KERNELS.axpy(x[r], m, offset + r * cols, y, 0, cols);
+		}
+		KERNELS.axpy(1, m, offset + (rows - 1) * cols, y, 0, cols);
+	}
+
+	public static void multiplyTransposedWithBias(final Matrix a,
+			final double x[], final double y[], final int count) {
+		multiplyTransposedWithBias(a, x, y, count, null);
+	}
+
+	/**
+	 * Multiply the transpose of a matrix by a batch of vectors that are
+	 * each extended with a one, y[i] = transpose(a) * [x[i], 1].  This is
+	 * multiplyTransposedVectorWithBias for many vectors at once, done as
+	 * one blocked matrix multiplication, so each block of a is loaded once
+	 * for the whole batch rather than once for each vector.
+	 * 
+	 * @param a
+	 *            The matrix.
+	 * @param x
+	 *            The vectors, stored one after another, each with one value
+	 *            for each row of a except the last.
+	 * @param y
+	 *            The results, stored one after another, each with one value
+	 *            for each column of a.
+	 * @param count
+	 *            The number of vectors.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void multiplyTransposedWithBias(final Matrix a,
+			final double x[], final double y[], final int count,
+			final ForkJoinPool pool) {
+		final int inner = a.getRows() - 1;
+		final int cols = a.getCols();
+		if ((count < 0) || (inner < 0) || (x.length < (long) count * inner)
+				|| (y.length < (long) count * cols)) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols() + " matrix by "
+					+ count + " vectors in " + x.length
+					+ " values and a bias into " + y.length + " values.");
+		}
+
+		Arrays.fill(y, 0, count * cols, 0);
+		final RowSource m;
+		if (a instanceof FloatMatrix) {
+			final float values[] = ((FloatMatrix) a).values;
+			m = (alpha, index, target, offset, length) -> KERNELS.axpy(alpha,
+					values, (int) index, target, offset, length);
+		} else if (a.isOffHeap()) {
+			m = OffHeapMath.rowSource(a);
+		} else {
+			final double values[] = heap(a).data;
+			m = (alpha, index, target, offset, length) -> KERNELS.axpy(alpha,
+					values, (int) index, target, offset, length);
+		}
+
+		if (pool == null) {
+			multiplyTransposedWithBias(x, m, y, 0, count, inner, cols);
+		} else {
+			RowTask.run(pool, count, (long) inner * cols, (startRow,
+					endRow) -> multiplyTransposedWithBias(x, m, y,
+					startRow, endRow, inner, cols));
+		}
+	}
+
+	/**
+	 * Accumulate rows startRow to endRow of [x, 1] * m into y, where m is
+	 * (inner + 1) x cols and its last row is the bias.  The loops are
+	 * blocked so that a tile of m stays in cache while it is applied to a
+	 * block of rows, and each row of a tile is added with the axpy kernel
+	 * for however m is stored.
+	 */
+	private static void multiplyTransposedWithBias(final double x[],
+			final RowSource m, final double y[], final int startRow,
+			final int endRow, final int inner, final int cols) {
+		for (int i0 = startRow; i0 < endRow; i0 += DEFAULT_ROW_TILE) {
+			final int i1 = Math.min(i0 + DEFAULT_ROW_TILE, endRow);
+			for (int k0 = 0; k0 < inner; k0 += DEFAULT_INNER_TILE) {
+				final int k1 = Math.min(k0 + DEFAULT_INNER_TILE, inner);
+				for (int j0 = 0; j0 < cols; j0 += DEFAULT_COL_TILE) {
+					final int width = Math.min(DEFAULT_COL_TILE, cols - j0);
+					for (int i = i0; i < i1; i++) {
+						for (int k = k0; k < k1; k++) {
+							m.axpy(x[i * inner + k], (long) k * cols + j0, y, i
+									* cols + j0, width);
+						}
+					}
+				}
+			}
+		}
+		for (int r = startRow; r < endRow; r++) {
+			m.axpy(1, (long) inner * cols, y, r * cols, cols);
+		}
+	}
+
+	/**
+	 * Multiply a sparse matrix by a vector, y = a * x.  Only the nonzero
+	 * values of a are read.
+	 * @param a The sparse matrix.
+	 * @param x The vector, one value for each column of a.
+	 * @param y The result, one value for each row of a.
+	 */
+	public static void multiplyVector(final SparseMatrix a, final double x[],
+			final double y[]) {
+		if ((x.length != a.getCols()) || (y.length < a.getRows())) {
+			throw new MatrixError("Can't multiply a " + a.getRows() + " x "
+					+ a.getCols() + " matrix by a vector of " + x.length
+					+ " into a vector of " + y.length + ".");
+		}
+		for (int r = 0; r < a.rows; r++) {
+			double sum = 0;
+			for (int i = a.rowStart[r]; i < a.rowStart[r + 1]; i++) {
+				sum += a.values[i] * x[a.columns[i]];
+			}
+			y[r] = sum;
+		}
+	}
+
+	/**
+	 * Multiply the transpose of a sparse matrix by a vector,
+	 * y = transpose(a) * x.  Only the nonzero values of a are read, and
+	 * rows that would be multiplied by zero are skipped.
+	 * @param a The sparse matrix.
+	 * @param x The vector, one value for each row of a.
+	 * @param y The result, one value for each column of a.
+	 */
+	public static void multiplyTransposedVector(final SparseMatrix a,
+			final double x[], final double y[]) {
+		if ((x.length != a.getRows()) || (y.length < a.getCols())) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols()
+					+ " matrix by a vector of " + x.length
+					+ " into a vector of " + y.length + ".");
+		}
+		Arrays.fill(y, 0, a.cols, 0);
+		for (int r = 0; r < a.rows; r++) {
+			final double value = x[r];
+			if (value != 0) {
+				for (int i = a.rowStart[r]; i < a.rowStart[r + 1]; i++) {
+					y[a.columns[i]] += value * a.values[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multiply the transpose of a sparse matrix by a vector that is
+	 * extended with a one, y = transpose(a) * [x, 1].  Only the nonzero
+	 * values of a are read.
+	 * @param a The sparse matrix.
+	 * @param x The vector, one value for each row of a except the last.
+	 * @param y The result, one value for each column of a.
+	 */
+	public static void multiplyTransposedVectorWithBias(final SparseMatrix a,
+			final double x[], final double y[]) {
+		if ((x.length != a.getRows() - 1) || (y.length < a.getCols())) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols()
+					+ " matrix by a vector of " + x.length
+					+ " and a bias into a vector of " + y.length + ".");
+		}
+		Arrays.fill(y, 0, a.cols, 0);
+		for (int r = 0; r < a.rows; r++) {
+			final double value = (r < x.length) ? x[r] : 1;
+			if (value != 0) {
+				for (int i = a.rowStart[r]; i < a.rowStart[r + 1]; i++) {
+					y[a.columns[i]] += value * a.values[i];
+				}
+			}
+		}
+	}
+
+	public static void multiplyTransposedWithBias(final SparseMatrix a,
+			final double x[], final double y[], final int count) {
+		multiplyTransposedWithBias(a, x, y, count, null);
+	}
+
+	/**
+	 * Multiply the transpose of a sparse matrix by a batch of vectors that
+	 * are each extended with a one, y[i] = transpose(a) * [x[i], 1].  This
+	 * is multiplyTransposedVectorWithBias for many vectors at once.  The
+	 * vectors are taken a block at a time, and each row of nonzeros is
+	 * applied to the whole block while it is in cache.
+	 * 
+	 * @param a
+	 *            The sparse matrix.
+	 * @param x
+	 *            The vectors, stored one after another, each with one value
+	 *            for each row of a except the last.
+	 * @param y
+	 *            The results, stored one after another, each with one value
+	 *            for each column of a.
+	 * @param count
+	 *            The number of vectors.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void multiplyTransposedWithBias(final SparseMatrix a,
+			final double x[], final double y[], final int count,
+			final ForkJoinPool pool) {
+		final int inner = a.getRows() - 1;
+		final int cols = a.getCols();
+		if ((count < 0) || (inner < 0) || (x.length < (long) count * inner)
+				|| (y.length < (long) count * cols)) {
+			throw new MatrixError("Can't multiply the transpose of a "
+					+ a.getRows() + " x " + a.getCols() + " matrix by "
+					+ count + " vectors in " + x.length
+					+ " values and a bias into " + y.length + " values.");
+		}
+
+		Arrays.fill(y, 0, count * cols, 0);
+		final long workPerRow = Math.max(1, a.getNonZeroCount());
+		if (pool == null) {
+			multiplyTransposedWithBias(x, a, y, 0, count, inner, cols);
+		} else {
+			RowTask.run(pool, count, workPerRow, (startRow,
+					endRow) -> multiplyTransposedWithBias(x, a, y, startRow,
+					endRow, inner, cols));
+		}
+	}
+
+	/**
+	 * Accumulate rows startRow to endRow of [x, 1] * a into y, where a is a
+	 * sparse (inner + 1) x cols matrix and its last row is the bias.
+	 */
+	private static void multiplyTransposedWithBias(final double x[],
+			final SparseMatrix a, final double y[], final int startRow,
+			final int endRow, final int inner, final int cols) {
+		for (int i0 = startRow; i0 < endRow; i0 += DEFAULT_ROW_TILE) {
+			final int i1 = Math.min(i0 + DEFAULT_ROW_TILE, endRow);
+			for (int k = 0; k <= inner; k++) {
+				for (int i = i0; i < i1; i++) {
+					final double value = (k < inner) ? x[i * inner + k] : 1;
+					if (value != 0) {
+						final int base = i * cols;
+						for (int n = a.rowStart[k]; n < a.rowStart[k + 1]; n++) {
+							y[base + a.columns[n]] += value * a.values[n];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the name of the kernels that perform the inner loops, either
+	 * "scalar" or "simd-" followed by the vector width in bits.
+	 * @return The name of the kernels.
+	 */
+	public static String getKernelName() {
+		return KERNELS.getName();
+	}
+
+	public static void rankOneUpdate(final Matrix a, final double x[],
+			final double y[]) {
+		rankOneUpdate(a, x, y, null);
+	}
+
+	/**
+	 * Add the outer product of two vectors to a matrix in place,
+	 * a += x * transpose(y).  Each row of a has a scaled copy of y added to
+	 * it, so a is read and written once.
+	 * 
+	 * @param a
+	 *            The matrix to update.
+	 * @param x
+	 *            The first vector, one value for each row of a.
+	 * @param y
+	 *            The second vector, one value for each column of a.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void rankOneUpdate(final Matrix a, final double x[],
+			final double y[], final ForkJoinPool pool) {
+		if ((x.length != a.getRows()) || (y.length != a.getCols())) {
+			throw new MatrixError("Can't add the outer product of vectors of "
+					+ x.length + " and " + y.length + " to a " + a.getRows()
+					+ " x " + a.getCols() + " matrix.");
+		}
+
+		if (a.isOffHeap()) {
+			OffHeapMath.rankOneUpdate(a, x, y, pool);
+			return;
+		}
+
+		if (!isHeap(a, a)) {
+			final Matrix staged = heap(a);
+			rankOneUpdate(staged, x, y, pool);
+			copy(staged, a);
+			return;
+		}
+
+		final double aData[] = a.data;
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			for (int r = startRow; r < endRow; r++) {
+				KERNELS.axpy(x[r], y, 0, aData, r * cols, cols);
+			}
+		});
+	}
+
+	public static void rankUpdate(final Matrix a, final Matrix x,
+			final Matrix y) {
+		rankUpdate(a, x, y, null);
+	}
+
+	/**
+	 * Add the outer products of several pairs of vectors to a matrix in
+	 * place, a += transpose(x) * y.  Row p of x and row p of y are one
+	 * pair.  All of the pairs are applied in a single blocked sweep over
+	 * a, rather than one sweep for each pair.
+	 * 
+	 * @param a
+	 *            The matrix to update.
+	 * @param x
+	 *            The first vectors, one per row, each with one value for
+	 *            each row of a.
+	 * @param y
+	 *            The second vectors, one per row, each with one value for
+	 *            each column of a.
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 */
+	public static void rankUpdate(final Matrix a, final Matrix x,
+			final Matrix y, final ForkJoinPool pool) {
+		if ((x.getRows() != y.getRows()) || (x.getCols() != a.getRows())
+				|| (y.getCols() != a.getCols())) {
+			throw new MatrixError("Can't add the outer products of a "
+					+ x.getRows() + " x " + x.getCols() + " and a "
+					+ y.getRows() + " x " + y.getCols() + " matrix to a "
+					+ a.getRows() + " x " + a.getCols() + " matrix.");
+		}
+
+		if (a.isOffHeap()) {
+			// updated in place, only the vectors may need to be copied
+			OffHeapMath.rankUpdate(a, heap(x), heap(y), pool);
+			return;
+		}
+
+		if (!isHeap(a, a) || !isHeap(x, y)) {
+			final Matrix staged = heap(a);
+			rankUpdate(staged, heap(x), heap(y), pool);
+			copy(staged, a);
+			return;
+		}
+
+		final double aData[] = a.data;
+		final double xData[] = x.data;
+		final double yData[] = y.data;
+		final int rows = a.rows;
+		final int count = x.rows;
+		final int cols = a.cols;
+
+		RowTask.run(pool, rows, (long) count * cols, (startRow, endRow) -> {
+			multiplyTransposed(xData, true, yData, false, aData, startRow,
+					endRow, rows, count, cols);
+		});
+	}
+
+	public static void scaleInPlace(final Matrix a, final double b) {
+		scaleInPlace(a, b, null);
+	}
+
+	/**
+	 * Multiply every element of a matrix by a number, in place.
+	 * @param a The matrix to scale.
+	 * @param b The number to multiply by.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	public static void scaleInPlace(final Matrix a, final double b,
+			final ForkJoinPool pool) {
+		if (a.isOffHeap()) {
+			OffHeapMath.scaleInPlace(a, b, pool);
+			return;
+		}
+
+		if (!isHeap(a, a)) {
+			final Matrix staged = heap(a);
+			scaleInPlace(staged, b, pool);
+			copy(staged, a);
+			return;
+		}
+
+		final double aData[] = a.data;
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			KERNELS.scale(aData, b, aData, startRow * cols, endRow * cols);
+		});
 	}
 
 	public static Matrix subtract(final Matrix a, final Matrix b) {
+		return subtract(a, b, null);
+	}
+
+	/**
+	 * Subtract one matrix from another, optionally in parallel.
+	 * @param a The matrix to subtract from.
+	 * @param b The matrix to subtract.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The difference.
+	 */
+	public static Matrix subtract(final Matrix a, final Matrix b,
+			final ForkJoinPool pool) {
 		if (a.getRows() != b.getRows()) {
 			throw new MatrixError(
 					"To subtract the matrices they must have the same number of rows and columns.  Matrix a has "
@@ -198,29 +1248,54 @@ public class MatrixMath {
 							+ b.getCols() + " cols.");
 		}
 
-		final double result[][] = new double[a.getRows()][a.getCols()];
-
-		for (int resultRow = 0; resultRow < a.getRows(); resultRow++) {
-			for (int resultCol = 0; resultCol < a.getCols(); resultCol++) {
-				result[resultRow][resultCol] = a.get(resultRow, resultCol)
-						- b.get(resultRow, resultCol);
-			}
+		if (!isHeap(a, b)) {
+			return subtract(heap(a), heap(b), pool);
 		}
 
-		return new Matrix(result);
+		final double aData[] = a.data;
+		final double bData[] = b.data;
+		final double result[] = new double[aData.length];
+		final int cols = a.cols;
+
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			KERNELS.subtract(aData, bData, result, startRow * cols, endRow
+					* cols);
+		});
+
+		return new Matrix(a.rows, a.cols, result);
 	}
 
 	public static Matrix transpose(final Matrix input) {
-		final double inverseMatrix[][] = new double[input.getCols()][input
-				.getRows()];
+		return transpose(input, null);
+	}
 
-		for (int r = 0; r < input.getRows(); r++) {
-			for (int c = 0; c < input.getCols(); c++) {
-				inverseMatrix[c][r] = input.get(r, c);
-			}
+	/**
+	 * Transpose a matrix, optionally in parallel.
+	 * @param input The matrix to transpose.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 * @return The transposed matrix.
+	 */
+	public static Matrix transpose(final Matrix input, final ForkJoinPool pool) {
+		if (!isHeap(input, input)) {
+			return transpose(heap(input), pool);
 		}
 
-		return new Matrix(inverseMatrix);
+		final int rows = input.rows;
+		final int cols = input.cols;
+		final double source[] = input.data;
+		final double inverseMatrix[] = new double[source.length];
+
+		// read the source sequentially, the writes stride by rows
+		RowTask.run(pool, rows, cols, (startRow, endRow) -> {
+			int index = startRow * cols;
+			for (int r = startRow; r < endRow; r++) {
+				for (int c = 0; c < cols; c++) {
+					inverseMatrix[c * rows + r] = source[index++];
+				}
+			}
+		});
+
+		return new Matrix(cols, rows, inverseMatrix);
 	}
 
 	/**
@@ -235,14 +1310,210 @@ public class MatrixMath {
 			throw new MatrixError(
 					"Can only take the vector length of a vector.");
 		}
-		final Double v[] = input.toPackedArray();
+		return vectorLength(vectorView(input));
+	}
+
+	/**
+	 * Calculate the length of a vector.  The vector may be a row or column
+	 * of a matrix, no values are copied.
+	 * 
+	 * @param input
+	 *            vector
+	 * @return Vector length.
+	 */
+	public static double vectorLength(final VectorView input) {
+		final double v[] = input.data;
 		double rtn = 0.0;
-		for (int i = 0; i < v.length; i++) {
-			rtn += Math.pow(v[i], 2);
+		if (v == null) {
+			for (int i = 0; i < input.length; i++) {
+				final double d = input.load(i);
+				rtn += d * d;
+			}
+		} else {
+			for (int i = 0, index = input.offset; i < input.length; i++, index += input.stride) {
+				rtn += v[index] * v[index];
+			}
 		}
 		return Math.sqrt(rtn);
 	}
 
+	/**
+	 * View a matrix that is either a single row or a single column as a
+	 * vector.
+	 */
+	private static VectorView vectorView(final Matrix vector) {
+		if (vector.getRows() == 1) {
+			return vector.getRowView(0);
+		} else {
+			return vector.getColView(0);
+		}
+	}
+
+	/**
+	 * Get a matrix stored in a Java array that holds the same values as the
+	 * matrix provided.  Matrices that are already stored in an array are
+	 * returned unchanged, others, such as an OffHeapMatrix, are copied into
+	 * a new matrix.  The copy can be as large as the weights, so it is not
+	 * taken from the workspace, where it would be kept after it is needed.
+	 */
+	private static Matrix heap(final Matrix matrix) {
+		if (matrix.data != null) {
+			return matrix;
+		}
+		final Matrix result = new Matrix(matrix.rows, matrix.cols);
+		matrix.toPackedArray(result.data, 0);
+		return result;
+	}
+
+	/**
+	 * Determine if both matrices are stored in Java arrays.  The array
+	 * kernels can only be used when they are.
+	 */
+	private static boolean isHeap(final Matrix a, final Matrix b) {
+		return (a.data != null) && (b.data != null);
+	}
+
+	/**
+	 * Make sure that two matrices have the same number of rows and columns.
+	 */
+	private static void checkSameSize(final Matrix a, final Matrix b,
+			final String operation) {
+		if ((a.getRows() != b.getRows()) || (a.getCols() != b.getCols())) {
+			throw new MatrixError("To " + operation
+					+ " the matrices they must have the same number of rows and columns.  Matrix a is "
+					+ a.getRows() + " x " + a.getCols() + " and matrix b is "
+					+ b.getRows() + " x " + b.getCols() + ".");
+		}
+	}
+
+	/**
+	 * Accumulate the product of a and b into result, splitting the rows
+	 * across the pool if one is provided.
+	 */
+	private static void multiplyTiled(final Matrix a, final Matrix b,
+			final double result[], final int rowTile, final int innerTile,
+			final int colTile, final ForkJoinPool pool) {
+		final int inner = a.cols;
+		final int cols = b.cols;
+
+		// keep each block at least a full row tile, unless that would leave
+		// too few blocks to occupy the pool
+		final int minRows = pool == null ? a.rows : Math.min(rowTile, a.rows
+				/ (pool.getParallelism() * 2));
+
+		RowTask.run(pool, a.rows, (long) inner * cols, minRows,
+				(startRow, endRow) -> multiplyTiled(a.data, b.data, result,
+						startRow, endRow, inner, cols, rowTile, innerTile,
+						colTile));
+	}
+
+	/**
+	 * Accumulate rows startRow to endRow of the product of a (rows x inner)
+	 * and b (inner x cols) into c, all stored row-major.  The loops are ordered i-k-j so that b and c
+	 * are read along their rows, and four rows of c are updated together
+	 * so that each value loaded from b is used four times.
+	 */
+	static void multiplyTiled(final double a[], final double b[],
+			final double c[], final int startRow, final int endRow,
+			final int inner, final int cols, final int rowTile,
+			final int innerTile, final int colTile) {
+
+		for (int i0 = startRow; i0 < endRow; i0 += rowTile) {
+			final int i1 = Math.min(i0 + rowTile, endRow);
+			for (int k0 = 0; k0 < inner; k0 += innerTile) {
+				final int k1 = Math.min(k0 + innerTile, inner);
+				for (int j0 = 0; j0 < cols; j0 += colTile) {
+					final int j1 = Math.min(j0 + colTile, cols);
+
+					int i = i0;
+					for (; i + 3 < i1; i += 4) {
+						final int c0 = i * cols;
+						final int c1 = c0 + cols;
+						final int c2 = c1 + cols;
+						final int c3 = c2 + cols;
+						for (int k = k0; k < k1; k++) {
+							final double a0 = a[i * inner + k];
+							final double a1 = a[(i + 1) * inner + k];
+							final double a2 = a[(i + 2) * inner + k];
+							final double a3 = a[(i + 3) * inner + k];
+							final int bRow = k * cols;
+							for (int j = j0; j < j1; j++) {
+								final double bv = b[bRow + j];
+								c[c0 + j] += a0 * bv;
+								c[c1 + j] += a1 * bv;
+								c[c2 + j] += a2 * bv;
+								c[c3 + j] += a3 * bv;
+							}
+						}
+					}
+
+					// the rows left over from the four row blocks
+					for (; i < i1; i++) {
+						final int c0 = i * cols;
+						for (int k = k0; k < k1; k++) {
+							final double a0 = a[i * inner + k];
+							final int bRow = k * cols;
+							for (int j = j0; j < j1; j++) {
+								c[c0 + j] += a0 * b[bRow + j];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accumulate rows startRow to endRow of op(a) * op(b) into c, where
+	 * op is either the identity or the transpose, and at least one of the
+	 * two is transposed.  op(a) is rows x inner and op(b) is inner x cols.
+	 * Each case is ordered so that the stored rows are read in order.
+	 */
+	static void multiplyTransposed(final double a[], final boolean transposeA,
+			final double b[], final boolean transposeB, final double c[],
+			final int startRow, final int endRow, final int rows,
+			final int inner, final int cols) {
+		if (!transposeA) {
+			// a * transpose(b), each value is the dot product of a row of a
+			// and a row of b.  Blocks of b's rows are reused for every row
+			// of a while they are still in the cache.
+			final int block = Math.max(1, (DEFAULT_INNER_TILE * DEFAULT_COL_TILE)
+					/ Math.max(1, inner));
+			for (int j0 = 0; j0 < cols; j0 += block) {
+				final int j1 = Math.min(j0 + block, cols);
+				for (int i = startRow; i < endRow; i++) {
+					for (int j = j0; j < j1; j++) {
+						c[i * cols + j] += KERNELS.dot(a, i * inner, b, j
+								* inner, inner);
+					}
+				}
+			}
+		} else if (!transposeB) {
+			// transpose(a) * b, a row of c is the sum of the rows of b, each
+			// scaled by one column of a.
+			for (int k0 = 0; k0 < inner; k0 += DEFAULT_INNER_TILE) {
+				final int k1 = Math.min(k0 + DEFAULT_INNER_TILE, inner);
+				for (int i = startRow; i < endRow; i++) {
+					for (int k = k0; k < k1; k++) {
+						KERNELS.axpy(a[k * rows + i], b, k * cols, c, i * cols,
+								cols);
+					}
+				}
+			}
+		} else {
+			// transpose(a) * transpose(b), rarely used so no blocking
+			for (int i = startRow; i < endRow; i++) {
+				for (int j = 0; j < cols; j++) {
+					double sum = 0;
+					for (int k = 0; k < inner; k++) {
+						sum += a[k * rows + i] * b[j * inner + k];
+					}
+					c[i * cols + j] += sum;
+				}
+			}
+		}
+	}
+
 	private MatrixMath() {
 	}
 
@@ -0,0 +1,221 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * MatrixProxy: The serialized form of a matrix.  A Matrix replaces
+ * itself with one of these when it is serialized, and the proxy is
+ * replaced with a new matrix when it is deserialized.
+ *
+ * The format is a header, holding the precision and the number of rows
+ * and columns, followed by all of the values, row-major, as a single
+ * block of little-endian doubles (or floats for a FloatMatrix).  The
+ * block is copied through a ByteBuffer in large chunks, rather than
+ * value by value.
+ *
+ * Matrices that were serialized before this class existed are still
+ * read, from their old default form, by Matrix.readObject.
+ *
+ * The size in the header is checked before anything is allocated, and
+ * the values array grows as the values are read, so a corrupt header
+ * can not make the reader allocate more than the stream holds.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+final class MatrixProxy implements Externalizable {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = -2712585649925226016L;
+
+	/**
+	 * The header value for a matrix of doubles.
+	 */
+	private static final byte DOUBLE = 1;
+
+	/**
+	 * The header value for a matrix of floats.
+	 */
+	private static final byte FLOAT = 2;
+
+	/**
+	 * The size of the chunks the values are copied in, in bytes.
+	 */
+	private static final int CHUNK = 1 << 16;
+
+	/**
+	 * The most values a matrix may hold, the largest array the JVM can
+	 * allocate.
+	 */
+	private static final int MAX_VALUES = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The most values allocated before any have been read.  Larger arrays
+	 * are grown as the values arrive.
+	 */
+	private static final int INITIAL_VALUES = 1 << 20;
+
+	/**
+	 * The matrix being written, or the matrix that was read.
+	 */
+	private Matrix matrix;
+
+	/**
+	 * Used by deserialization.
+	 */
+	public MatrixProxy() {
+	}
+
+	/**
+	 * Construct the proxy for a matrix that is about to be written.
+	 * @param matrix The matrix.
+	 */
+	MatrixProxy(final Matrix matrix) {
+		this.matrix = matrix;
+	}
+
+	public void readExternal(final ObjectInput in) throws IOException {
+		final byte precision = in.readByte();
+		final int rows = in.readInt();
+		final int cols = in.readInt();
+		final int size = size(rows, cols);
+
+		final ByteBuffer buffer = ByteBuffer.allocate(CHUNK).order(
+				ByteOrder.LITTLE_ENDIAN);
+		if (precision == DOUBLE) {
+			double data[] = new double[Math.min(size, INITIAL_VALUES)];
+			for (int i = 0; i < size;) {
+				final int count = Math.min(size - i, CHUNK / Double.BYTES);
+				if (i + count > data.length) {
+					data = Arrays.copyOf(data, grow(data.length, size));
+				}
+				read(in, buffer, count * Double.BYTES);
+				buffer.asDoubleBuffer().get(data, i, count);
+				i += count;
+			}
+			this.matrix = new Matrix(rows, cols, data);
+		} else if (precision == FLOAT) {
+			float values[] = new float[Math.min(size, INITIAL_VALUES)];
+			for (int i = 0; i < size;) {
+				final int count = Math.min(size - i, CHUNK / Float.BYTES);
+				if (i + count > values.length) {
+					values = Arrays.copyOf(values, grow(values.length, size));
+				}
+				read(in, buffer, count * Float.BYTES);
+				buffer.asFloatBuffer().get(values, i, count);
+				i += count;
+			}
+			this.matrix = new FloatMatrix(rows, cols, values);
+		} else {
+			throw new MatrixError("Unknown matrix precision " + precision
+					+ " in serialized data.");
+		}
+	}
+
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		final Matrix matrix = this.matrix;
+		final int size = matrix.size();
+		final boolean single = matrix instanceof FloatMatrix;
+
+		out.writeByte(single ? FLOAT : DOUBLE);
+		out.writeInt(matrix.getRows());
+		out.writeInt(matrix.getCols());
+
+		final ByteBuffer buffer = ByteBuffer.allocate(CHUNK).order(
+				ByteOrder.LITTLE_ENDIAN);
+		if (single) {
+			final float values[] = ((FloatMatrix) matrix).values;
+			for (int i = 0; i < size;) {
+				final int count = Math.min(size - i, CHUNK / Float.BYTES);
+				buffer.clear();
+				buffer.asFloatBuffer().put(values, i, count);
+				out.write(buffer.array(), 0, count * Float.BYTES);
+				i += count;
+			}
+		} else if (matrix.data != null) {
+			for (int i = 0; i < size;) {
+				final int count = Math.min(size - i, CHUNK / Double.BYTES);
+				buffer.clear();
+				buffer.asDoubleBuffer().put(matrix.data, i, count);
+				out.write(buffer.array(), 0, count * Double.BYTES);
+				i += count;
+			}
+		} else {
+			// matrices without an array, such as an OffHeapMatrix
+			final int cols = matrix.getCols();
+			for (int i = 0; i < size;) {
+				final int count = Math.min(size - i, CHUNK / Double.BYTES);
+				buffer.clear();
+				for (int j = i; j < i + count; j++) {
+					buffer.putDouble(matrix.getUnchecked(j / cols, j % cols));
+				}
+				out.write(buffer.array(), 0, count * Double.BYTES);
+				i += count;
+			}
+		}
+	}
+
+	/**
+	 * Replace this proxy with the matrix that was read.
+	 * @return The matrix.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return this.matrix;
+	}
+
+	/**
+	 * Choose the next length of an array that is growing towards a size.
+	 * @param length The current length.
+	 * @param size The final size.
+	 * @return The new length.
+	 */
+	private static int grow(final int length, final int size) {
+		return (int) Math.min((long) length * 2, size);
+	}
+
+	/**
+	 * Read bytes into the start of the buffer.
+	 * @param in The stream to read from.
+	 * @param buffer The buffer to fill.
+	 * @param length The number of bytes to read.
+	 */
+	private static void read(final ObjectInput in, final ByteBuffer buffer,
+			final int length) throws IOException {
+		in.readFully(buffer.array(), 0, length);
+		buffer.clear();
+	}
+
+	/**
+	 * Check the dimensions read from a header.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @return The number of values.
+	 */
+	private static int size(final int rows, final int cols) {
+		if ((rows < 0) || (cols < 0)) {
+			throw new MatrixError("Can't read a matrix of " + rows + " x "
+					+ cols + ".");
+		}
+		try {
+			final int size = Math.multiplyExact(rows, cols);
+			if (size <= MAX_VALUES) {
+				return size;
+			}
+		} catch (final ArithmeticException e) {
+			// reported below
+		}
+		throw new MatrixError("Can't read a matrix of " + rows + " x " + cols
+				+ ", it has more than " + MAX_VALUES + " values.");
+	}
+}
@@ -0,0 +1,97 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * OffHeapKernels: The inner loops that read or write the memory of an
+ * OffHeapMatrix.  Such memory holds doubles in native byte order, and
+ * is indexed by value rather than by byte.  This class uses plain Java
+ * loops, SimdOffHeapKernels uses the JDK Vector API, and is chosen in
+ * the same way as SimdKernels is chosen by Kernels.
+ *
+ * These kernels are kept apart from Kernels because they use the
+ * java.lang.foreign API, a preview feature of JDK 21.  They are only
+ * loaded when an off-heap matrix is used.
+ *
+ * All memory is accessed without validation, callers must check the
+ * dimensions first.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+class OffHeapKernels {
+
+	/**
+	 * The kernels in use.
+	 */
+	static final OffHeapKernels INSTANCE = create();
+
+	/**
+	 * Choose the best kernels that are available.
+	 * @return The kernels to use.
+	 */
+	private static OffHeapKernels create() {
+		if (!"false".equalsIgnoreCase(System.getProperty(Kernels.SIMD_PROPERTY))) {
+			try {
+				return (OffHeapKernels) Class.forName(
+						"com.aurora.ai.neuralnetwork.matrix.SimdOffHeapKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch (final Exception e) {
+				// fall through to the scalar kernels
+			} catch (final LinkageError e) {
+				// the vector module is not present
+			}
+		}
+		return new OffHeapKernels();
+	}
+
+	/**
+	 * y[yIndex+i] += alpha * x[xOffset+i] for i from 0 to length, where y
+	 * is off-heap.
+	 */
+	void axpy(final double alpha, final double x[], final int xOffset,
+			final MemorySegment y, final long yIndex, final int length) {
+		for (int i = 0; i < length; i++) {
+			y.setAtIndex(ValueLayout.JAVA_DOUBLE, yIndex + i, y.getAtIndex(
+					ValueLayout.JAVA_DOUBLE, yIndex + i) + alpha * x[xOffset + i]);
+		}
+	}
+
+	/**
+	 * y[yOffset+i] += alpha * x[xIndex+i] for i from 0 to length, where x
+	 * is off-heap.
+	 */
+	void axpy(final double alpha, final MemorySegment x, final long xIndex,
+			final double y[], final int yOffset, final int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] += alpha
+					* x.getAtIndex(ValueLayout.JAVA_DOUBLE, xIndex + i);
+		}
+	}
+
+	/**
+	 * The sum of a[aIndex+i] * b[bOffset+i] for i from 0 to length, where a
+	 * is off-heap.
+	 */
+	double dot(final MemorySegment a, final long aIndex, final double b[],
+			final int bOffset, final int length) {
+		double result = 0;
+		for (int i = 0; i < length; i++) {
+			result += a.getAtIndex(ValueLayout.JAVA_DOUBLE, aIndex + i)
+					* b[bOffset + i];
+		}
+		return result;
+	}
+
+	/**
+	 * a[i] = a[i] * factor for i from start to end, where a is off-heap.
+	 */
+	void scale(final MemorySegment a, final double factor, final long start,
+			final long end) {
+		for (long i = start; i < end; i++) {
+			a.setAtIndex(ValueLayout.JAVA_DOUBLE, i, a.getAtIndex(
+					ValueLayout.JAVA_DOUBLE, i) * factor);
+		}
+	}
+}
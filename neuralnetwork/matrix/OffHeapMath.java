@@ -0,0 +1,263 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * OffHeapMath: The MatrixMath operations that work directly on the
+ * memory of an OffHeapMatrix.  MatrixMath checks the dimensions, and
+ * only calls these when Matrix.isOffHeap says the matrix is off-heap,
+ * so this class and the java.lang.foreign API it uses are not loaded
+ * by programs that only use matrices on the heap.
+ *
+ * Matrices that are not off-heap are passed in as they are, and must
+ * be stored in a Java array unless stated otherwise.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+final class OffHeapMath {
+
+	/**
+	 * The kernels that perform the inner loops.
+	 */
+	private static final OffHeapKernels KERNELS = OffHeapKernels.INSTANCE;
+
+	/**
+	 * Add a multiple of one matrix to an off-heap matrix, in place.  If x
+	 * is not stored in a Java array its rows are copied, one at a time,
+	 * into a buffer from the workspace.
+	 * @param alpha The amount to multiply x by.
+	 * @param x The matrix to add, of any kind.
+	 * @param y The off-heap matrix to add to.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	static void axpy(final double alpha, final Matrix x, final Matrix y,
+			final ForkJoinPool pool) {
+		final MemorySegment target = segment(y);
+		final int cols = y.cols;
+		RowTask.run(pool, y.rows, cols, (startRow, endRow) -> {
+			if (x.data != null) {
+				for (int r = startRow; r < endRow; r++) {
+					KERNELS.axpy(alpha, x.data, r * cols, target, (long) r
+							* cols, cols);
+				}
+				return;
+			}
+
+			final Workspace workspace = Workspace.current();
+			final int mark = workspace.mark();
+			try {
+				final double row[] = workspace.vector(cols);
+				for (int r = startRow; r < endRow; r++) {
+					loadRow(x, r, row);
+					KERNELS.axpy(alpha, row, 0, target, (long) r * cols, cols);
+				}
+			} finally {
+				workspace.release(mark);
+			}
+		});
+	}
+
+	/**
+	 * Copy one off-heap matrix to another of the same size.
+	 * @param source The matrix to copy.
+	 * @param target The matrix to copy to.
+	 */
+	static void copy(final Matrix source, final Matrix target) {
+		MemorySegment.copy(segment(source), 0, segment(target), 0,
+				(long) source.size() * Double.BYTES);
+	}
+
+	/**
+	 * Apply a learning step with momentum to off-heap weights.  The deltas
+	 * are computed in their arrays and then added to the weights in place.
+	 * @param weights The off-heap weights to update.
+	 * @param accumulated The accumulated deltas, cleared afterwards.
+	 * @param delta The deltas from the previous step, replaced by the
+	 * deltas from this step.
+	 * @param learnRate The learning rate.
+	 * @param momentum The momentum.
+	 * @param invalid Set if one of the new deltas is NaN or infinite.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	static void momentumUpdate(final Matrix weights,
+			final Matrix accumulated, final Matrix delta,
+			final double learnRate, final double momentum,
+			final AtomicBoolean invalid, final ForkJoinPool pool) {
+		final MemorySegment target = segment(weights);
+		final double acc[] = accumulated.data;
+		final double d[] = delta.data;
+		final int cols = weights.cols;
+
+		RowTask.run(pool, weights.rows, cols, (startRow, endRow) -> {
+			double check = 0;
+			for (int r = startRow; r < endRow; r++) {
+				final int start = r * cols;
+				for (int i = start; i < start + cols; i++) {
+					d[i] = learnRate * acc[i] + momentum * d[i];
+					acc[i] = 0;
+					check += d[i] * 0;
+				}
+				KERNELS.axpy(1, d, start, target, start, cols);
+			}
+			if (check != 0) {
+				invalid.set(true);
+			}
+		});
+	}
+
+	/**
+	 * Multiply the transpose of an off-heap matrix by a vector that is
+	 * extended with a one, y = transpose(a) * [x, 1].
+	 * @param a The off-heap matrix.
+	 * @param x The vector, one value for each row of a except the last.
+	 * @param y The result, one value for each column of a.
+	 */
+	static void multiplyTransposedVectorWithBias(final Matrix a,
+			final double x[], final double y[]) {
+		final MemorySegment m = segment(a);
+		Arrays.fill(y, 0, a.cols, 0);
+		for (int r = 0; r < a.rows - 1; r++) {
+			KERNELS.axpy(x[r], m, (long) r * a.cols, y, 0, a.cols);
+		}
+		KERNELS.axpy(1, m, (long) (a.rows - 1) * a.cols, y, 0, a.cols);
+	}
+
+	/**
+	 * Multiply the transpose of an off-heap matrix by a vector,
+	 * y = transpose(a) * x.
+	 * @param a The off-heap matrix.
+	 * @param x The vector, one value for each row of a.
+	 * @param y The result, one value for each column of a.
+	 */
+	static void multiplyTransposedVector(final Matrix a, final double x[],
+			final double y[]) {
+		final MemorySegment m = segment(a);
+		Arrays.fill(y, 0, a.cols, 0);
+		for (int r = 0; r < a.rows; r++) {
+			KERNELS.axpy(x[r], m, (long) r * a.cols, y, 0, a.cols);
+		}
+	}
+
+	/**
+	 * Get a source for the values of an off-heap matrix, so that the
+	 * blocked loops of MatrixMath can read it directly.
+	 * @param a The off-heap matrix.
+	 * @return The source.
+	 */
+	static MatrixMath.RowSource rowSource(final Matrix a) {
+		final MemorySegment m = segment(a);
+		return (alpha, index, y, yOffset, length) -> KERNELS.axpy(alpha, m,
+				index, y, yOffset, length);
+	}
+
+	/**
+	 * Multiply an off-heap matrix by a vector, y = a * x.
+	 * @param a The off-heap matrix.
+	 * @param x The vector, one value for each column of a.
+	 * @param y The result, one value for each row of a.
+	 */
+	static void multiplyVector(final Matrix a, final double x[],
+			final double y[]) {
+		final MemorySegment m = segment(a);
+		for (int r = 0; r < a.rows; r++) {
+			y[r] = KERNELS.dot(m, (long) r * a.cols, x, 0, a.cols);
+		}
+	}
+
+	/**
+	 * Add the outer product of two vectors to an off-heap matrix in place,
+	 * a += x * transpose(y).
+	 * @param a The off-heap matrix to update.
+	 * @param x The first vector, one value for each row of a.
+	 * @param y The second vector, one value for each column of a.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	static void rankOneUpdate(final Matrix a, final double x[],
+			final double y[], final ForkJoinPool pool) {
+		final MemorySegment target = segment(a);
+		final int cols = a.cols;
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> {
+			for (int r = startRow; r < endRow; r++) {
+				KERNELS.axpy(x[r], y, 0, target, (long) r * cols, cols);
+			}
+		});
+	}
+
+	/**
+	 * Add the outer products of several pairs of vectors to an off-heap
+	 * matrix in place, a += transpose(x) * y.  As MatrixMath.rankUpdate,
+	 * each row of a is the sum of the rows of y, each scaled by one column
+	 * of x.
+	 * @param a The off-heap matrix to update.
+	 * @param x The first vectors, one per row.
+	 * @param y The second vectors, one per row.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	static void rankUpdate(final Matrix a, final Matrix x, final Matrix y,
+			final ForkJoinPool pool) {
+		final MemorySegment target = segment(a);
+		final double xData[] = x.data;
+		final double yData[] = y.data;
+		final int rows = a.rows;
+		final int count = x.rows;
+		final int cols = a.cols;
+
+		RowTask.run(pool, rows, (long) count * cols, (startRow, endRow) -> {
+			for (int k0 = 0; k0 < count; k0 += MatrixMath.DEFAULT_INNER_TILE) {
+				final int k1 = Math.min(k0 + MatrixMath.DEFAULT_INNER_TILE, count);
+				for (int i = startRow; i < endRow; i++) {
+					for (int k = k0; k < k1; k++) {
+						KERNELS.axpy(xData[k * rows + i], yData, k * cols,
+								target, (long) i * cols, cols);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Multiply every element of an off-heap matrix by a number, in place.
+	 * @param a The off-heap matrix to scale.
+	 * @param b The number to multiply by.
+	 * @param pool The pool to use, or null to run on the calling thread.
+	 */
+	static void scaleInPlace(final Matrix a, final double b,
+			final ForkJoinPool pool) {
+		final MemorySegment target = segment(a);
+		final int cols = a.cols;
+		RowTask.run(pool, a.rows, cols, (startRow, endRow) -> KERNELS.scale(
+				target, b, (long) startRow * cols, (long) endRow * cols));
+	}
+
+	/**
+	 * Copy one row of a matrix that is not stored in a Java array into an
+	 * array.
+	 */
+	private static void loadRow(final Matrix matrix, final int row,
+			final double result[]) {
+		final int cols = matrix.cols;
+		if (matrix.isOffHeap()) {
+			MemorySegment.copy(segment(matrix), ValueLayout.JAVA_DOUBLE,
+					(long) row * cols * Double.BYTES, result, 0, cols);
+		} else {
+			for (int c = 0; c < cols; c++) {
+				result[c] = matrix.getUnchecked(row, c);
+			}
+		}
+	}
+
+	/**
+	 * Get the memory that holds the values of an off-heap matrix.
+	 */
+	private static MemorySegment segment(final Matrix matrix) {
+		return ((OffHeapMatrix) matrix).getSegment();
+	}
+
+	private OffHeapMath() {
+	}
+}
@@ -0,0 +1,352 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.random.RandomGenerator;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * OffHeapMatrix: A matrix whose values are stored outside of the Java
+ * heap, in a MemorySegment.  Very large weight matrices, such as those
+ * of a big Hopfield network or self organizing map, can be kept here so
+ * that the garbage collector does not need to scan or copy them.
+ *
+ * The memory is allocated from an Arena supplied by the caller, and
+ * lives until that arena is closed.  Using the matrix after its arena
+ * has been closed results in an IllegalStateException.  A confined
+ * arena only allows the thread that created it to use the matrix, use
+ * a shared arena if the matrix will be used from more than one thread.
+ *
+ * This class can be used anywhere a Matrix can.  It has no backing
+ * array, so getData() is not supported.  MatrixMath updates the values
+ * in place and reads them in place for matrix-vector products, the
+ * other operations copy them to the heap first.
+ *
+ * This class uses the java.lang.foreign API, which is a preview feature
+ * of JDK 21.  It must be compiled, and programs that use it must be run,
+ * on JDK 21 with --enable-preview.  The rest of the package does not
+ * depend on the preview API.
+ *
+ * When serialized the matrix is written as an ordinary Matrix.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class OffHeapMatrix extends Matrix {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = 2270417707447271866L;
+
+	/**
+	 * The layout of a single value.
+	 */
+	private static final ValueLayout.OfDouble LAYOUT = ValueLayout.JAVA_DOUBLE;
+
+	/**
+	 * The arena that owns the memory.
+	 */
+	private final transient Arena arena;
+
+	/**
+	 * The matrix values, stored row-major.
+	 */
+	private final transient MemorySegment segment;
+
+	/**
+	 * Construct an empty matrix in the specified arena.  All values start
+	 * as zero.
+	 * @param arena The arena to allocate the values from.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 */
+	public OffHeapMatrix(final Arena arena, final int rows, final int cols) {
+		this(arena, rows, cols, null);
+	}
+
+	/**
+	 * Construct a copy of another matrix in the specified arena.
+	 * @param arena The arena to allocate the values from.
+	 * @param source The matrix to copy.
+	 */
+	public OffHeapMatrix(final Arena arena, final Matrix source) {
+		this(arena, source.getRows(), source.getCols(), source);
+	}
+
+	/**
+	 * Allocate the values, and copy them from another matrix if one is
+	 * given.
+	 * @param arena The arena to allocate the values from.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @param source The matrix to copy, or null to start with zeros.
+	 */
+	private OffHeapMatrix(final Arena arena, final int rows, final int cols,
+			final Matrix source) {
+		super(rows, cols, null);
+		this.arena = arena;
+		this.segment = arena.allocate(LAYOUT.byteSize() * rows * cols,
+				LAYOUT.byteAlignment());
+		if (source != null) {
+			copy(source, this.segment);
+		}
+	}
+
+	@Override
+	public void add(final int row, final int col, final double value) {
+		validate(row, col);
+		final double newValue = getUnchecked(row, col) + value;
+		checkValue(newValue);
+		setUnchecked(row, col, newValue);
+	}
+
+	@Override
+	public void addUnchecked(final int row, final int col, final double value) {
+		final long index = index(row, col);
+		this.segment.setAtIndex(LAYOUT, index, this.segment.getAtIndex(
+				LAYOUT, index) + value);
+	}
+
+	@Override
+	public void clear() {
+		this.segment.fill((byte) 0);
+	}
+
+	/**
+	 * Clone the matrix into the same arena.
+	 * @return The cloned matrix.
+	 */
+	@Override
+	public OffHeapMatrix clone() {
+		return new OffHeapMatrix(this.arena, this);
+	}
+
+	@Override
+	public int fromPackedArray(final Double[] array, int index) {
+		final int size = size();
+		for (int i = 0; i < size; i++) {
+			this.segment.setAtIndex(LAYOUT, i, array[index++]);
+		}
+		return index;
+	}
+
+	@Override
+	public int fromPackedArray(final double array[], final int index) {
+		MemorySegment.copy(array, index, this.segment, LAYOUT, 0, size());
+		return index + size();
+	}
+
+	@Override
+	public double get(final int row, final int col) {
+		validate(row, col);
+		return getUnchecked(row, col);
+	}
+
+	/**
+	 * Get the arena that owns the memory of this matrix.
+	 * @return The arena.
+	 */
+	public Arena getArena() {
+		return this.arena;
+	}
+
+	/**
+	 * Copy a column into a new matrix on the heap.
+	 * @param col The column.
+	 * @return The column.
+	 */
+	@Override
+	public Matrix getCol(final int col) {
+		final VectorView view = getColView(col);
+		return new Matrix(getRows(), 1, view.toArray());
+	}
+
+	@Override
+	public VectorView getColView(final int col) {
+		if ((col >= getCols()) || (col < 0)) {
+			throw new MatrixError("Can't get column #" + col
+					+ " because it does not exist.");
+		}
+		return new SegmentView(col, getCols(), getRows());
+	}
+
+	/**
+	 * An off-heap matrix has no backing array.
+	 * @return Never returns.
+	 */
+	@Override
+	public double[] getData() {
+		throw new MatrixError(
+				"An off-heap matrix does not have a backing array, use getSegment instead.");
+	}
+
+	/**
+	 * Copy a row into a new matrix on the heap.
+	 * @param row The row.
+	 * @return The row.
+	 */
+	@Override
+	public Matrix getRow(final int row) {
+		final VectorView view = getRowView(row);
+		return new Matrix(1, getCols(), view.toArray());
+	}
+
+	@Override
+	public VectorView getRowView(final int row) {
+		if ((row >= getRows()) || (row < 0)) {
+			throw new MatrixError("Can't get row #" + row
+					+ " because it does not exist.");
+		}
+		return new SegmentView((long) row * getCols(), 1, getCols());
+	}
+
+	/**
+	 * Get the memory that holds the values.  The values are stored
+	 * row-major as doubles in native byte order.
+	 * @return The memory segment.
+	 */
+	public MemorySegment getSegment() {
+		return this.segment;
+	}
+
+	@Override
+	public double getUnchecked(final int row, final int col) {
+		return this.segment.getAtIndex(LAYOUT, index(row, col));
+	}
+
+	@Override
+	boolean isOffHeap() {
+		return true;
+	}
+
+	@Override
+	public boolean isZero() {
+		final int size = size();
+		for (int i = 0; i < size; i++) {
+			if (this.segment.getAtIndex(LAYOUT, i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void ramdomize(final double min, final double max,
+			final RandomGenerator random) {
+		final int size = size();
+		for (int i = 0; i < size; i++) {
+			this.segment.setAtIndex(LAYOUT, i, (random.nextDouble() * (max - min))
+					+ min);
+		}
+	}
+
+	@Override
+	public void set(final int row, final int col, final double value) {
+		validate(row, col);
+		checkValue(value);
+		setUnchecked(row, col, value);
+	}
+
+	@Override
+	public void setUnchecked(final int row, final int col, final double value) {
+		this.segment.setAtIndex(LAYOUT, index(row, col), value);
+	}
+
+	@Override
+	public double sum() {
+		final int size = size();
+		double result = 0;
+		for (int i = 0; i < size; i++) {
+			result += this.segment.getAtIndex(LAYOUT, i);
+		}
+		return result;
+	}
+
+	@Override
+	public Double[] toPackedArray() {
+		final int size = size();
+		final Double result[] = new Double[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = this.segment.getAtIndex(LAYOUT, i);
+		}
+		return result;
+	}
+
+	@Override
+	public int toPackedArray(final double array[], final int index) {
+		MemorySegment.copy(this.segment, LAYOUT, 0, array, index, size());
+		return index + size();
+	}
+
+	/**
+	 * Copy the values of a matrix into off-heap memory, without staging
+	 * them on the heap.
+	 * @param source The matrix to copy.
+	 * @param target The memory to copy to.
+	 */
+	private static void copy(final Matrix source, final MemorySegment target) {
+		final int size = source.getRows() * source.getCols();
+		if (source instanceof OffHeapMatrix) {
+			MemorySegment.copy(((OffHeapMatrix) source).segment, 0, target, 0,
+					LAYOUT.byteSize() * size);
+		} else if (source.data != null) {
+			MemorySegment.copy(source.data, 0, target, LAYOUT, 0, size);
+		} else {
+			final int cols = source.getCols();
+			for (int i = 0; i < size; i++) {
+				target.setAtIndex(LAYOUT, i, source.getUnchecked(i / cols, i
+						% cols));
+			}
+		}
+	}
+
+	/**
+	 * Calculate the index of an element.
+	 */
+	private long index(final int row, final int col) {
+		return (long) row * getCols() + col;
+	}
+
+	/**
+	 * SegmentView: A view of a row or column of an OffHeapMatrix.
+	 */
+	private final class SegmentView extends VectorView {
+
+		/**
+		 * The index of the first element.
+		 */
+		private final long start;
+
+		/**
+		 * The distance between two elements.
+		 */
+		private final long step;
+
+		/**
+		 * Construct the view.
+		 * @param start The index of the first element.
+		 * @param step The distance between two elements.
+		 * @param length The number of elements.
+		 */
+		SegmentView(final long start, final long step, final int length) {
+			super(length);
+			this.start = start;
+			this.step = step;
+		}
+
+		@Override
+		double load(final int index) {
+			return OffHeapMatrix.this.segment.getAtIndex(LAYOUT, this.start
+					+ index * this.step);
+		}
+
+		@Override
+		void store(final int index, final double value) {
+			OffHeapMatrix.this.segment.setAtIndex(LAYOUT, this.start + index
+					* this.step, value);
+		}
+	}
+}
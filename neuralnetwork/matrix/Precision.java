@@ -0,0 +1,40 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+/**
+ * Precision: The precision that a matrix stores its values at.
+ * DOUBLE matrices are regular Matrix objects, FLOAT matrices are
+ * FloatMatrix objects and use half of the memory.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public enum Precision {
+
+	/**
+	 * 64 bit values, stored in a Matrix.
+	 */
+	DOUBLE {
+		@Override
+		public Matrix createMatrix(final int rows, final int cols) {
+			return new Matrix(rows, cols);
+		}
+	},
+
+	/**
+	 * 32 bit values, stored in a FloatMatrix.
+	 */
+	FLOAT {
+		@Override
+		public Matrix createMatrix(final int rows, final int cols) {
+			return new FloatMatrix(rows, cols);
+		}
+	};
+
+	/**
+	 * Create an empty matrix at this precision.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @return The new matrix.
+	 */
+	public abstract Matrix createMatrix(int rows, int cols);
+}
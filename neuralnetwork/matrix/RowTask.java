@@ -0,0 +1,162 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * RowTask: Splits a matrix operation into blocks of rows so that
+ * the blocks can be processed in parallel by a fork/join pool.  The
+ * operation is described by a RowKernel, which must be safe to run on
+ * separate row ranges at the same time.
+ *
+ * Small operations are not worth the cost of forking, so anything
+ * below PARALLEL_THRESHOLD units of work is run on the calling thread.
+ *
+ * The rows need not belong to a matrix.  The feedforward package uses
+ * this to split a batch of patterns, one row for each pattern.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class RowTask extends RecursiveAction {
+
+	/**
+	 * An operation that can be performed on a range of rows.
+	 */
+	public interface RowKernel {
+
+		/**
+		 * Process the specified rows.
+		 * @param startRow The first row, inclusive.
+		 * @param endRow The last row, exclusive.
+		 */
+		void compute(int startRow, int endRow);
+	}
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = 3370520919478307236L;
+
+	/**
+	 * Operations, or blocks of rows, with less work than this are not
+	 * split any further.  One unit of work is roughly one multiply-add or
+	 * one element visited.
+	 */
+	static final long PARALLEL_THRESHOLD = 1 << 15;
+
+	/**
+	 * Run the kernel over all of the rows.  If a pool is provided and the
+	 * operation is large enough the rows are split into blocks, otherwise
+	 * the kernel is run on the calling thread.
+	 *
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @param rows
+	 *            The number of rows.
+	 * @param workPerRow
+	 *            The amount of work needed for each row.
+	 * @param kernel
+	 *            The operation to perform.
+	 */
+	public static void run(final ForkJoinPool pool, final int rows,
+			final long workPerRow, final RowKernel kernel) {
+		run(pool, rows, workPerRow, 1, kernel);
+	}
+
+	/**
+	 * Run the kernel over all of the rows, never splitting them into blocks
+	 * of fewer than minRows rows.  Kernels that reuse data across rows,
+	 * such as a tiled multiply, use this to keep their blocks useful.
+	 *
+	 * @param pool
+	 *            The pool to use, or null to run on the calling thread.
+	 * @param rows
+	 *            The number of rows.
+	 * @param workPerRow
+	 *            The amount of work needed for each row.
+	 * @param minRows
+	 *            The smallest block of rows to hand to the kernel.
+	 * @param kernel
+	 *            The operation to perform.
+	 */
+	public static void run(final ForkJoinPool pool, final int rows,
+			final long workPerRow, final int minRows, final RowKernel kernel) {
+		final RowTask task = new RowTask(kernel, 0, rows, workPerRow,
+				Math.max(1, minRows));
+		if ((pool == null) || !task.isSplittable()) {
+			kernel.compute(0, rows);
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	/**
+	 * The operation to perform.  Tasks are never serialized, so the
+	 * kernel need not be serializable.
+	 */
+	private final transient RowKernel kernel;
+
+	/**
+	 * The first row for this task.
+	 */
+	private final int startRow;
+
+	/**
+	 * The row after the last row for this task.
+	 */
+	private final int endRow;
+
+	/**
+	 * The amount of work needed for each row.
+	 */
+	private final long workPerRow;
+
+	/**
+	 * The smallest block of rows that will be handed to the kernel.
+	 */
+	private final int minRows;
+
+	/**
+	 * Construct a task for a range of rows.
+	 * @param kernel The operation to perform.
+	 * @param startRow The first row, inclusive.
+	 * @param endRow The last row, exclusive.
+	 * @param workPerRow The amount of work needed for each row.
+	 * @param minRows The smallest block of rows to hand to the kernel.
+	 */
+	private RowTask(final RowKernel kernel, final int startRow,
+			final int endRow, final long workPerRow, final int minRows) {
+		this.kernel = kernel;
+		this.startRow = startRow;
+		this.endRow = endRow;
+		this.workPerRow = workPerRow;
+		this.minRows = minRows;
+	}
+
+	/**
+	 * Either process the rows directly or split them in half.
+	 */
+	@Override
+	protected void compute() {
+		if (!isSplittable()) {
+			this.kernel.compute(this.startRow, this.endRow);
+		} else {
+			final int middle = this.startRow
+					+ ((this.endRow - this.startRow) / 2);
+			invokeAll(new RowTask(this.kernel, this.startRow, middle,
+					this.workPerRow, this.minRows), new RowTask(this.kernel,
+					middle, this.endRow, this.workPerRow, this.minRows));
+		}
+	}
+
+	/**
+	 * Determine if this task is worth splitting in half.
+	 * @return True if this task should be split.
+	 */
+	private boolean isSplittable() {
+		final int count = this.endRow - this.startRow;
+		return (count >= (this.minRows * 2))
+				&& ((count * this.workPerRow) > PARALLEL_THRESHOLD);
+	}
+}
@@ -0,0 +1,59 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+/**
+ * ScalarKernels: Matrix kernels written as plain Java loops.  These
+ * are always available and are used whenever the vector kernels
+ * can't be.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+final class ScalarKernels extends Kernels {
+
+	@Override
+	void add(final double a[], final double b[], final double result[],
+			final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			result[i] = a[i] + b[i];
+		}
+	}
+
+	@Override
+	void axpy(final double alpha, final double x[], final int xOffset,
+			final double y[], final int yOffset, final int length) {
+		for (int i = 0; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	@Override
+	double dot(final double a[], final int aOffset, final double b[],
+			final int bOffset, final int length) {
+		double result = 0;
+		for (int i = 0; i < length; i++) {
+			result += a[aOffset + i] * b[bOffset + i];
+		}
+		return result;
+	}
+
+	@Override
+	String getName() {
+		return "scalar";
+	}
+
+	@Override
+	void scale(final double a[], final double factor, final double result[],
+			final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			result[i] = a[i] * factor;
+		}
+	}
+
+	@Override
+	void subtract(final double a[], final double b[], final double result[],
+			final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			result[i] = a[i] - b[i];
+		}
+	}
+}
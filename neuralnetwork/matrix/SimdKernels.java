@@ -0,0 +1,182 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdKernels: Matrix kernels written with the incubating JDK Vector
+ * API.  Each loop processes as many values at once as the platform's
+ * preferred vector width allows, then finishes any remaining values
+ * one at a time.
+ *
+ * Single precision values are loaded at half of the preferred width and
+ * widened to doubles, so twice as many weights are read for each byte
+ * of memory traffic while the sums keep double precision.
+ *
+ * This class is only loaded by Kernels, and only when the
+ * jdk.incubator.vector module is available.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+final class SimdKernels extends Kernels {
+
+	/**
+	 * The vector shape to use.
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * The float vector shape with the same number of lanes as SPECIES.
+	 */
+	private static final VectorSpecies<Float> FLOAT_SPECIES = VectorSpecies
+			.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+	/**
+	 * Load floats and widen them to doubles.
+	 */
+	private static DoubleVector widen(final float m[], final int offset) {
+		return (DoubleVector) FloatVector.fromArray(FLOAT_SPECIES, m, offset)
+				.convertShape(VectorOperators.F2D, SPECIES, 0);
+	}
+
+	@Override
+	void add(final double a[], final double b[], final double result[],
+			final int start, final int end) {
+		int i = start;
+		final int upper = start + SPECIES.loopBound(end - start);
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i)
+					.add(DoubleVector.fromArray(SPECIES, b, i))
+					.intoArray(result, i);
+		}
+		for (; i < end; i++) {
+			result[i] = a[i] + b[i];
+		}
+	}
+
+	@Override
+	void axpy(final double alpha, final double x[], final int xOffset,
+			final double y[], final int yOffset, final int length) {
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(alpha)
+					.add(DoubleVector.fromArray(SPECIES, y, yOffset + i))
+					.intoArray(y, yOffset + i);
+		}
+		for (; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	@Override
+	void axpy(final double alpha, final float x[], final int xOffset,
+			final double y[], final int yOffset, final int length) {
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			widen(x, xOffset + i).mul(alpha)
+					.add(DoubleVector.fromArray(SPECIES, y, yOffset + i))
+					.intoArray(y, yOffset + i);
+		}
+		for (; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	@Override
+	double dot(final double a[], final int aOffset, final double b[],
+			final int bOffset, final int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			sum = sum.add(DoubleVector.fromArray(SPECIES, a, aOffset + i)
+					.mul(DoubleVector.fromArray(SPECIES, b, bOffset + i)));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			result += a[aOffset + i] * b[bOffset + i];
+		}
+		return result;
+	}
+
+	@Override
+	void gemv(final float m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		final int upper = SPECIES.loopBound(cols);
+		for (int r = 0; r < rows; r++) {
+			final int base = r * cols;
+			DoubleVector sum = DoubleVector.zero(SPECIES);
+			int c = 0;
+			for (; c < upper; c += SPECIES.length()) {
+				sum = sum.add(widen(m, base + c).mul(
+						DoubleVector.fromArray(SPECIES, x, c)));
+			}
+			double result = sum.reduceLanes(VectorOperators.ADD);
+			for (; c < cols; c++) {
+				result += m[base + c] * x[c];
+			}
+			y[r] = result;
+		}
+	}
+
+	@Override
+	void gemvTransposed(final float m[], final int rows, final int cols,
+			final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows; r++) {
+			axpy(x[r], m, r * cols, y, 0, cols);
+		}
+	}
+
+	@Override
+	void gemvTransposedBias(final float m[], final int rows,
+			final int cols, final double x[], final double y[]) {
+		Arrays.fill(y, 0, cols, 0);
+		for (int r = 0; r < rows - 1; r++) {
+			axpy(x[r], m, r * cols, y, 0, cols);
+		}
+		axpy(1, m, (rows - 1) * cols, y, 0, cols);
+	}
+
+	@Override
+	String getName() {
+		return "simd-" + SPECIES.vectorBitSize();
+	}
+
+	@Override
+	void scale(final double a[], final double factor, final double result[],
+			final int start, final int end) {
+		int i = start;
+		final int upper = start + SPECIES.loopBound(end - start);
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).mul(factor)
+					.intoArray(result, i);
+		}
+		for (; i < end; i++) {
+			result[i] = a[i] * factor;
+		}
+	}
+
+	@Override
+	void subtract(final double a[], final double b[], final double result[],
+			final int start, final int end) {
+		int i = start;
+		final int upper = start + SPECIES.loopBound(end - start);
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i)
+					.sub(DoubleVector.fromArray(SPECIES, b, i))
+					.intoArray(result, i);
+		}
+		for (; i < end; i++) {
+			result[i] = a[i] - b[i];
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdOffHeapKernels: Off-heap matrix kernels written with the
+ * incubating JDK Vector API.  Values are loaded from and stored to the
+ * memory segment directly, at the platform's preferred vector width.
+ *
+ * This class is only loaded by OffHeapKernels, and only when the
+ * jdk.incubator.vector module is available.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+final class SimdOffHeapKernels extends OffHeapKernels {
+
+	/**
+	 * The vector shape to use.
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * The byte order of off-heap values.
+	 */
+	private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+	@Override
+	void axpy(final double alpha, final double x[], final int xOffset,
+			final MemorySegment y, final long yIndex, final int length) {
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			final long offset = (yIndex + i) * Double.BYTES;
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(alpha)
+					.add(DoubleVector.fromMemorySegment(SPECIES, y, offset, ORDER))
+					.intoMemorySegment(y, offset, ORDER);
+		}
+		for (; i < length; i++) {
+			y.setAtIndex(ValueLayout.JAVA_DOUBLE, yIndex + i, y.getAtIndex(
+					ValueLayout.JAVA_DOUBLE, yIndex + i) + alpha * x[xOffset + i]);
+		}
+	}
+
+	@Override
+	void axpy(final double alpha, final MemorySegment x, final long xIndex,
+			final double y[], final int yOffset, final int length) {
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector.fromMemorySegment(SPECIES, x, (xIndex + i)
+					* Double.BYTES, ORDER).mul(alpha)
+					.add(DoubleVector.fromArray(SPECIES, y, yOffset + i))
+					.intoArray(y, yOffset + i);
+		}
+		for (; i < length; i++) {
+			y[yOffset + i] += alpha
+					* x.getAtIndex(ValueLayout.JAVA_DOUBLE, xIndex + i);
+		}
+	}
+
+	@Override
+	double dot(final MemorySegment a, final long aIndex, final double b[],
+			final int bOffset, final int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		final int upper = SPECIES.loopBound(length);
+		for (; i < upper; i += SPECIES.length()) {
+			sum = sum.add(DoubleVector.fromMemorySegment(SPECIES, a,
+					(aIndex + i) * Double.BYTES, ORDER).mul(
+					DoubleVector.fromArray(SPECIES, b, bOffset + i)));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			result += a.getAtIndex(ValueLayout.JAVA_DOUBLE, aIndex + i)
+					* b[bOffset + i];
+		}
+		return result;
+	}
+
+	@Override
+	void scale(final MemorySegment a, final double factor, final long start,
+			final long end) {
+		long i = start;
+		final long upper = start + SPECIES.loopBound(end - start);
+		for (; i < upper; i += SPECIES.length()) {
+			final long offset = i * Double.BYTES;
+			DoubleVector.fromMemorySegment(SPECIES, a, offset, ORDER)
+					.mul(factor).intoMemorySegment(a, offset, ORDER);
+		}
+		for (; i < end; i++) {
+			a.setAtIndex(ValueLayout.JAVA_DOUBLE, i, a.getAtIndex(
+					ValueLayout.JAVA_DOUBLE, i) * factor);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.io.Serializable;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * SparseMatrix: A matrix that only stores its nonzero values, in
+ * compressed sparse row (CSR) form.  Weight matrices that have been
+ * pruned or decayed are often mostly zeros, and multiplying by this
+ * form of the matrix only costs as much as the number of nonzeros.
+ *
+ * The nonzero values of row r, along with their columns, are stored
+ * in values and columns from index rowStart[r] up to, but not
+ * including, rowStart[r+1].  Within a row the columns are in order.
+ *
+ * A SparseMatrix can not be changed once it is built.  Convert it back
+ * to a Matrix to change it, then build a new SparseMatrix.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class SparseMatrix implements Serializable {
+
+	/**
+	 * Serial id for this class.
+	 */
+	private static final long serialVersionUID = 6198208417725342619L;
+
+	/**
+	 * Calculate the fraction of the values in a matrix that are not zero.
+	 * @param matrix The matrix to check.
+	 * @return The density, between 0 and 1.
+	 */
+	public static double density(final Matrix matrix) {
+		if (matrix.size() == 0) {
+			return 0;
+		}
+		return (double) countNonZero(matrix) / matrix.size();
+	}
+
+	/**
+	 * Count the values in a matrix that are not zero.
+	 */
+	private static int countNonZero(final Matrix matrix) {
+		int result = 0;
+		if (matrix.data != null) {
+			for (int i = 0; i < matrix.data.length; i++) {
+				if (matrix.data[i] != 0) {
+					result++;
+				}
+			}
+		} else {
+			for (int r = 0; r < matrix.rows; r++) {
+				for (int c = 0; c < matrix.cols; c++) {
+					if (matrix.getUnchecked(r, c) != 0) {
+						result++;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The number of rows.
+	 */
+	final int rows;
+
+	/**
+	 * The number of columns.
+	 */
+	final int cols;
+
+	/**
+	 * The index in columns and values of the first value of each row,
+	 * followed by the number of nonzero values.
+	 */
+	final int rowStart[];
+
+	/**
+	 * The column of each nonzero value.
+	 */
+	final int columns[];
+
+	/**
+	 * The nonzero values.
+	 */
+	final double values[];
+
+	/**
+	 * Construct a sparse copy of a matrix.  Only the values that are not
+	 * zero are copied.
+	 * @param source The matrix to copy.
+	 */
+	public SparseMatrix(final Matrix source) {
+		this.rows = source.getRows();
+		this.cols = source.getCols();
+		final int count = countNonZero(source);
+		this.rowStart = new int[this.rows + 1];
+		this.columns = new int[count];
+		this.values = new double[count];
+
+		int index = 0;
+		for (int r = 0; r < this.rows; r++) {
+			this.rowStart[r] = index;
+			for (int c = 0; c < this.cols; c++) {
+				final double value = source.getUnchecked(r, c);
+				if (value != 0) {
+					this.columns[index] = c;
+					this.values[index] = value;
+					index++;
+				}
+			}
+		}
+		this.rowStart[this.rows] = index;
+	}
+
+	/**
+	 * Get a value.  Rows are searched with a binary search, so this is
+	 * much slower than reading a regular Matrix.
+	 * @param row The row.
+	 * @param col The column.
+	 * @return The value.
+	 */
+	public double get(final int row, final int col) {
+		if ((row >= this.rows) || (row < 0)) {
+			throw new MatrixError("The row:" + row + " is out of range:"
+					+ this.rows);
+		}
+		if ((col >= this.cols) || (col < 0)) {
+			throw new MatrixError("The col:" + col + " is out of range:"
+					+ this.cols);
+		}
+
+		int low = this.rowStart[row];
+		int high = this.rowStart[row + 1] - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (this.columns[middle] < col) {
+				low = middle + 1;
+			} else if (this.columns[middle] > col) {
+				high = middle - 1;
+			} else {
+				return this.values[middle];
+			}
+		}
+		return 0;
+	}
+
+	public int getCols() {
+		return this.cols;
+	}
+
+	/**
+	 * Get the fraction of the values in this matrix that are not zero.
+	 * @return The density, between 0 and 1.
+	 */
+	public double getDensity() {
+		if ((this.rows == 0) || (this.cols == 0)) {
+			return 0;
+		}
+		return (double) getNonZeroCount() / ((long) this.rows * this.cols);
+	}
+
+	/**
+	 * Get the number of values that are stored.
+	 * @return The number of nonzero values.
+	 */
+	public int getNonZeroCount() {
+		return this.values.length;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Convert this matrix into a regular Matrix.
+	 * @return The dense matrix.
+	 */
+	public Matrix toMatrix() {
+		final Matrix result = new Matrix(this.rows, this.cols);
+		for (int r = 0; r < this.rows; r++) {
+			for (int i = this.rowStart[r]; i < this.rowStart[r + 1]; i++) {
+				result.data[r * this.cols + this.columns[i]] = this.values[i];
+			}
+		}
+		return result;
+	}
+}
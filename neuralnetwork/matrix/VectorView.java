@@ -0,0 +1,164 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * VectorView: A vector that refers to values stored somewhere else,
+ * usually one row or column of a matrix.  No values are copied, so
+ * changes made through the view are made to the matrix, and changes
+ * to the matrix can be seen through the view.
+ *
+ * The elements of the view are found in the underlying array
+ * starting at an offset and separated by a stride.  A row of a
+ * matrix has a stride of one, a column has a stride equal to the
+ * number of columns in the matrix.
+ *
+ * Views of matrices that are not stored in a Java array, such as
+ * OffHeapMatrix, are subclasses that override load and store.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class VectorView {
+
+	/**
+	 * The array that holds the values, null for views that are not
+	 * backed by an array.
+	 */
+	final double data[];
+
+	/**
+	 * The index of the first element.
+	 */
+	final int offset;
+
+	/**
+	 * The distance between two elements.
+	 */
+	final int stride;
+
+	/**
+	 * The number of elements.
+	 */
+	final int length;
+
+	/**
+	 * Construct a view of an entire array.
+	 * @param data The array to view.
+	 */
+	public VectorView(final double data[]) {
+		this(data, 0, 1, data.length);
+	}
+
+	/**
+	 * Construct a view of part of an array.
+	 * @param data The array to view.
+	 * @param offset The index of the first element.
+	 * @param stride The distance between two elements.
+	 * @param length The number of elements.
+	 */
+	public VectorView(final double data[], final int offset,
+			final int stride, final int length) {
+		if ((offset < 0) || (stride < 1) || (length < 0)
+				|| ((length > 0) && ((offset + (long) (length - 1) * stride) >= data.length))) {
+			throw new MatrixError("A view of " + length
+					+ " elements starting at " + offset + " with a stride of "
+					+ stride + " does not fit in an array of "
+					+ data.length + " elements.");
+		}
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.length = length;
+	}
+
+	/**
+	 * Construct a view that is not backed by an array.  The subclass
+	 * must override load and store.
+	 * @param length The number of elements.
+	 */
+	VectorView(final int length) {
+		this.data = null;
+		this.offset = 0;
+		this.stride = 1;
+		this.length = length;
+	}
+
+	/**
+	 * Get one element of the vector.
+	 * @param index The element to get.
+	 * @return The value of the element.
+	 */
+	public double get(final int index) {
+		validate(index);
+		return load(index);
+	}
+
+	/**
+	 * Read an element without validating the index.
+	 * @param index The element to read.
+	 * @return The value of the element.
+	 */
+	double load(final int index) {
+		return this.data[this.offset + index * this.stride];
+	}
+
+	/**
+	 * Set one element of the vector.  As with Matrix.set, NaN and
+	 * infinity are rejected.
+	 * @param index The element to set.
+	 * @param value The new value.
+	 */
+	public void set(final int index, final double value) {
+		validate(index);
+		checkValue(value);
+		store(index, value);
+	}
+
+	/**
+	 * Write an element without validating the index.
+	 * @param index The element to write.
+	 * @param value The new value.
+	 */
+	void store(final int index, final double value) {
+		this.data[this.offset + index * this.stride] = value;
+	}
+
+	/**
+	 * Get the number of elements in the vector.
+	 * @return The number of elements.
+	 */
+	public int size() {
+		return this.length;
+	}
+
+	/**
+	 * Copy the vector into a new array.
+	 * @return The values of the vector.
+	 */
+	public double[] toArray() {
+		final double result[] = new double[this.length];
+		for (int i = 0; i < this.length; i++) {
+			result[i] = load(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Check that a value can be stored in the vector.
+	 * @param value The value to check.
+	 */
+	void checkValue(final double value) {
+		if (Double.isInfinite(value) || Double.isNaN(value)) {
+			throw new MatrixError("Trying to assign invalud number to matrix: "
+					+ value);
+		}
+	}
+
+	private void validate(final int index) {
+		if ((index < 0) || (index >= this.length)) {
+			throw new MatrixError("The index:" + index + " is out of range:"
+					+ this.length);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package com.aurora.ai.neuralnetwork.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.aurora.ai.neuralnetwork.exception.MatrixError;
+
+/**
+ * Workspace: Hands out scratch vectors and matrices that are reused,
+ * rather than allocating new ones for every temporary value.  Each
+ * thread has its own workspace, returned by current(), so no locking
+ * is needed.
+ *
+ * Scratch space is taken from the top of a stack and given back in
+ * blocks.  Call mark() before taking any, and release() with the mark
+ * when they are no longer needed:
+ *
+ *   final Workspace workspace = Workspace.current();
+ *   final int mark = workspace.mark();
+ *   try {
+ *     final double temp[] = workspace.vector(size);
+ *     ...
+ *   } finally {
+ *     workspace.release(mark);
+ *   }
+ *
+ * Each position on the stack keeps the last array or matrix that was
+ * handed out from it.  When the same sizes are asked for again, which
+ * is the usual case when the same network is run over and over, that
+ * array or matrix is reused and nothing is allocated.  Buffers larger
+ * than MAX_RETAINED bytes are not kept, so a thread that once needed a
+ * very large buffer does not hold on to it for the rest of its life.
+ *
+ * Virtual threads are usually short lived, so a workspace kept for each
+ * one would rarely be reused.  Instead a virtual thread is lent an idle
+ * workspace, and gives it back when it releases everything it took.
+ * If it uses the workspace again after that it takes it back, unless
+ * another virtual thread has been lent it in the meantime, which is an
+ * error.  Call current() again rather than keeping a workspace.
+ *
+ * A vector or matrix must not be used after it has been released, or
+ * passed to another thread.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public final class Workspace {
+
+	/**
+	 * The largest buffer, in bytes, that is kept for reuse once it has
+	 * been released.
+	 */
+	public static final long MAX_RETAINED = 1 << 22;
+
+	/**
+	 * The most idle workspaces kept for virtual threads.
+	 */
+	private static final int MAX_IDLE = 4 * Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * The workspace for each thread.
+	 */
+	private static final ThreadLocal<Workspace> CURRENT = new ThreadLocal<Workspace>();
+
+	/**
+	 * Workspaces given back by virtual threads, waiting to be lent again.
+	 * A workspace may be in the queue more than once, only the first
+	 * thread to claim it gets it.
+	 */
+	private static final ConcurrentLinkedQueue<Workspace> IDLE = new ConcurrentLinkedQueue<Workspace>();
+
+	/**
+	 * The number of entries in IDLE.
+	 */
+	private static final AtomicInteger IDLE_COUNT = new AtomicInteger();
+
+	/**
+	 * Get the workspace for the calling thread.
+	 * @return The workspace.
+	 */
+	public static Workspace current() {
+		final Workspace result = CURRENT.get();
+		if ((result != null) && result.claim()) {
+			return result;
+		}
+
+		final Workspace workspace = Thread.currentThread().isVirtual() ? lend()
+				: new Workspace(false);
+		CURRENT.set(workspace);
+		return workspace;
+	}
+
+	/**
+	 * Lend a workspace to the calling virtual thread.
+	 * @return An idle workspace, or a new one if none are idle.
+	 */
+	private static Workspace lend() {
+		Workspace result;
+		while ((result = IDLE.poll()) != null) {
+			IDLE_COUNT.decrementAndGet();
+			if (result.claim()) {
+				return result;
+			}
+		}
+		result = new Workspace(true);
+		result.claim();
+		return result;
+	}
+
+	/**
+	 * The thread the workspace is lent to, or null if it is idle.  Only
+	 * used for the workspaces of virtual threads.
+	 */
+	private final AtomicReference<Thread> owner;
+
+	/**
+	 * The array or matrix last handed out from each position.
+	 */
+	private Object slots[] = new Object[16];
+
+	/**
+	 * The next free position.
+	 */
+	private int top;
+
+	/**
+	 * Use current() to get the workspace for a thread.
+	 * @param lent True if the workspace is lent to virtual threads.
+	 */
+	private Workspace(final boolean lent) {
+		this.owner = lent ? new AtomicReference<Thread>() : null;
+	}
+
+	/**
+	 * Get a scratch byte array.  All of its values are zero.
+	 * @param length The number of values.
+	 * @return The scratch array.
+	 */
+	public byte[] bytes(final int length) {
+		final Object slot = take();
+		byte result[];
+		if ((slot instanceof byte[]) && (((byte[]) slot).length == length)) {
+			result = (byte[]) slot;
+			Arrays.fill(result, (byte) 0);
+		} else {
+			result = new byte[length];
+			keep(result, length);
+		}
+		return result;
+	}
+
+	/**
+	 * Get a mark that can later be used to release everything taken after
+	 * this call.
+	 * @return The mark.
+	 */
+	public int mark() {
+		checkOwner();
+		return this.top;
+	}
+
+	/**
+	 * Get a scratch matrix.  All of its values are zero.
+	 * @param rows The number of rows.
+	 * @param cols The number of columns.
+	 * @return The scratch matrix.
+	 */
+	public Matrix matrix(final int rows, final int cols) {
+		final Object slot = take();
+		Matrix result;
+		if ((slot instanceof Matrix) && (((Matrix) slot).rows == rows)
+				&& (((Matrix) slot).cols == cols)) {
+			result = (Matrix) slot;
+			Arrays.fill(result.data, 0);
+		} else {
+			result = new Matrix(rows, cols);
+			keep(result, (long) rows * cols * Double.BYTES);
+		}
+		return result;
+	}
+
+	/**
+	 * Give back everything taken since the mark was made.
+	 * @param mark The value returned by mark().
+	 */
+	public void release(final int mark) {
+		checkOwner();
+		if ((mark < 0) || (mark > this.top)) {
+			throw new MatrixError("Can't release the workspace to " + mark
+					+ ", only " + this.top + " buffers are in use.");
+		}
+		this.top = mark;
+
+		if ((this.owner != null) && (mark == 0)) {
+			// everything has been given back, so lend it to another thread
+			this.owner.set(null);
+			if (IDLE_COUNT.incrementAndGet() <= MAX_IDLE) {
+				IDLE.offer(this);
+			} else {
+				IDLE_COUNT.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Get a scratch vector.  All of its values are zero.
+	 * @param length The number of values.
+	 * @return The scratch vector.
+	 */
+	public double[] vector(final int length) {
+		final Object slot = take();
+		double result[];
+		if ((slot instanceof double[]) && (((double[]) slot).length == length)) {
+			result = (double[]) slot;
+			Arrays.fill(result, 0);
+		} else {
+			result = new double[length];
+			keep(result, (long) length * Double.BYTES);
+		}
+		return result;
+	}
+
+	/**
+	 * Make sure that the calling thread may use this workspace, taking it
+	 * back if it was given back while the thread still held it.
+	 */
+	private void checkOwner() {
+		if ((this.owner != null) && !claim()) {
+			throw new MatrixError(
+					"This workspace has been lent to another thread, call Workspace.current() again.");
+		}
+	}
+
+	/**
+	 * Claim this workspace for the calling thread.
+	 * @return False if it is lent to another thread.
+	 */
+	private boolean claim() {
+		if (this.owner == null) {
+			return true;
+		}
+		final Thread thread = Thread.currentThread();
+		return (this.owner.get() == thread)
+				|| this.owner.compareAndSet(null, thread);
+	}
+
+	/**
+	 * Remember the buffer just handed out from the top position, so that
+	 * it can be reused, unless it is too large to keep.
+	 * @param buffer The buffer.
+	 * @param size Its size in bytes.
+	 */
+	private void keep(final Object buffer, final long size) {
+		this.slots[this.top - 1] = (size <= MAX_RETAINED) ? buffer : null;
+	}
+
+	/**
+	 * Take the next position from the stack.
+	 * @return What was last handed out from that position, if anything.
+	 */
+	private Object take() {
+		checkOwner();
+		if (this.top == this.slots.length) {
+			this.slots = Arrays.copyOf(this.slots, this.slots.length * 2);
+		}
+		return this.slots[this.top++];
+	}
+}
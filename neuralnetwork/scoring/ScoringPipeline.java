@@ -0,0 +1,704 @@
+package com.aurora.ai.neuralnetwork.scoring;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
+
+/**
+ * ScoringPipeline: Runs every row of a file through a neural network and
+ * writes the outputs to another file, without ever holding more than a
+ * few blocks of rows in memory.
+ *
+ * The input is read through a channel in large chunks and split into
+ * blocks of rows.  Each block is run through the network as one batch,
+ * on the pool if one is set, and its outputs are handed to a writer
+ * thread.  The writer takes the blocks in the order they were read, so
+ * the output rows are in the same order as the input rows.  At most
+ * maxBlocks blocks are waiting to be written at once; when that many are
+ * waiting the reading stops until the writer catches up, so the memory
+ * used does not depend on the size of the input.  A line of CSV input
+ * is held whole while it is parsed, so lines longer than maxLineLength
+ * bytes are rejected rather than read into memory.
+ *
+ * Rows can be read and written in two formats.  CSV has one row per
+ * line with the values separated by commas.  BINARY has each row as its
+ * values, one after another, as 8 byte little-endian doubles, with
+ * nothing between rows.
+ *
+ * The network is only read, so it must not be trained while a file is
+ * being scored.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class ScoringPipeline {
+
+	/**
+	 * The formats that rows can be read and written in.
+	 */
+	public enum Format {
+
+		/**
+		 * One row per line, values separated by commas.
+		 */
+		CSV,
+
+		/**
+		 * Little-endian 8 byte doubles, one row after another.
+		 */
+		BINARY
+	}
+
+	/**
+	 * The default number of rows in a block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	/**
+	 * The default number of blocks that may wait to be written.
+	 */
+	public static final int DEFAULT_MAX_BLOCKS = 8;
+
+	/**
+	 * The default longest line of CSV input, in bytes.
+	 */
+	public static final int DEFAULT_MAX_LINE_LENGTH = 1 << 20;
+
+	/**
+	 * The size of the buffers used to read and write, in bytes.
+	 */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * The network to run.
+	 */
+	private final NeuralNetwork network;
+
+	/**
+	 * The format of the input.
+	 */
+	private Format inputFormat = Format.CSV;
+
+	/**
+	 * The format of the output.
+	 */
+	private Format outputFormat = Format.CSV;
+
+	/**
+	 * True if the first line of CSV input is a header to be skipped.
+	 */
+	private boolean header;
+
+	/**
+	 * The number of rows in a block.
+	 */
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	/**
+	 * The most blocks that may wait to be written.
+	 */
+	private int maxBlocks = DEFAULT_MAX_BLOCKS;
+
+	/**
+	 * The longest line of CSV input, in bytes.
+	 */
+	private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+	/**
+	 * An optional pool to run the blocks on.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Construct a pipeline that reads and writes CSV.
+	 * @param network The network to run.
+	 */
+	public ScoringPipeline(final NeuralNetwork network) {
+		this.network = network;
+	}
+
+	/**
+	 * Get the number of rows in a block.
+	 * @return The block size.
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	/**
+	 * Get the format of the input.
+	 * @return The input format.
+	 */
+	public Format getInputFormat() {
+		return this.inputFormat;
+	}
+
+	/**
+	 * Get the most blocks that may wait to be written.
+	 * @return The most blocks.
+	 */
+	public int getMaxBlocks() {
+		return this.maxBlocks;
+	}
+
+	/**
+	 * Get the longest line of CSV input that will be read.
+	 * @return The longest line, in bytes.
+	 */
+	public int getMaxLineLength() {
+		return this.maxLineLength;
+	}
+
+	/**
+	 * Get the format of the output.
+	 * @return The output format.
+	 */
+	public Format getOutputFormat() {
+		return this.outputFormat;
+	}
+
+	/**
+	 * Get the optional pool.
+	 * @return The pool, or null if blocks are run on the reading thread.
+	 */
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Determine if the first line of CSV input is skipped.
+	 * @return True if the input has a header.
+	 */
+	public boolean isHeader() {
+		return this.header;
+	}
+
+	/**
+	 * Score every row of a file into another file.  The output file is
+	 * created, or replaced if it exists.
+	 * @param input The file to read.
+	 * @param output The file to write.
+	 * @return The number of rows scored.
+	 * @throws IOException If a file could not be read or written.
+	 */
+	public long score(final Path input, final Path output) throws IOException {
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output,
+						StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			return score(in, out);
+		}
+	}
+
+	/**
+	 * Score every row read from one channel, writing the outputs to
+	 * another.  Neither channel is closed.
+	 * @param input The channel to read.
+	 * @param output The channel to write.
+	 * @return The number of rows scored.
+	 * @throws IOException If a channel could not be read or written.
+	 */
+	public long score(final ReadableByteChannel input,
+			final WritableByteChannel output) throws IOException {
+		final Writer writer = new Writer(output);
+		boolean finished = false;
+		try {
+			final long rows = (this.inputFormat == Format.CSV) ? readCsv(input,
+					writer) : readBinary(input, writer);
+			writer.finish();
+			finished = true;
+			return rows;
+		} finally {
+			if (!finished) {
+				writer.abort();
+			}
+		}
+	}
+
+	/**
+	 * Set the number of rows in a block.  Larger blocks make better use of
+	 * the batched forward pass, smaller ones use less memory.
+	 * @param blockSize The block size.
+	 */
+	public void setBlockSize(final int blockSize) {
+		if (blockSize < 1) {
+			throw new NeuralNetworkError("The block size must be at least 1, not "
+					+ blockSize + ".");
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Set whether the first line of CSV input is a header to be skipped.
+	 * @param header True if the input has a header.
+	 */
+	public void setHeader(final boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * Set the format of the input.
+	 * @param inputFormat The input format.
+	 */
+	public void setInputFormat(final Format inputFormat) {
+		this.inputFormat = inputFormat;
+	}
+
+	/**
+	 * Set the most blocks that may wait to be written.
+	 * @param maxBlocks The most blocks.
+	 */
+	public void setMaxBlocks(final int maxBlocks) {
+		if (maxBlocks < 1) {
+			throw new NeuralNetworkError("At least 1 block must be allowed, not "
+					+ maxBlocks + ".");
+		}
+		this.maxBlocks = maxBlocks;
+	}
+
+	/**
+	 * Set the longest line of CSV input that will be read.  Longer lines,
+	 * or input with no newlines, fail rather than being read into memory.
+	 * @param maxLineLength The longest line, in bytes, not counting the
+	 *            newline.
+	 */
+	public void setMaxLineLength(final int maxLineLength) {
+		if (maxLineLength < 1) {
+			throw new NeuralNetworkError("The longest line must be at least 1 byte, not "
+					+ maxLineLength + ".");
+		}
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Set the format of the output.
+	 * @param outputFormat The output format.
+	 */
+	public void setOutputFormat(final Format outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+
+	/**
+	 * Set the optional pool.  Blocks are run on the pool while the next
+	 * blocks are read.
+	 * @param pool The pool to use, or null to run blocks on the reading
+	 *            thread.
+	 */
+	public void setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Parse one line of CSV input into a row.
+	 * @param line The bytes of the line.
+	 * @param length The number of bytes in the line.
+	 * @param row Holds the values.
+	 * @param offset Where the row starts.
+	 * @param lineNumber The line number, for error messages.
+	 * @return False if the line is blank.
+	 */
+	private boolean parseLine(final byte line[], final int length,
+			final double row[], final int offset, final long lineNumber) {
+		int end = length;
+		while ((end > 0) && (line[end - 1] == '\r')) {
+			end--;
+		}
+		final String text = new String(line, 0, end, StandardCharsets.ISO_8859_1);
+		if (text.isBlank()) {
+			return false;
+		}
+
+		final int inputCount = this.network.getInputLayer().getNeuronCount();
+		int count = 0;
+		int start = 0;
+		while (start <= text.length()) {
+			int comma = text.indexOf(',', start);
+			if (comma == -1) {
+				comma = text.length();
+			}
+			if (count == inputCount) {
+				count++;
+				break;
+			}
+			try {
+				row[offset + count] = Double.parseDouble(text.substring(start,
+						comma).trim());
+			} catch (final NumberFormatException e) {
+				throw new NeuralNetworkError("Line " + lineNumber
+						+ " has a value that is not a number: "
+						+ text.substring(start, comma).trim());
+			}
+			count++;
+			start = comma + 1;
+		}
+		if (count != inputCount) {
+			throw new NeuralNetworkError("Line " + lineNumber + " has "
+					+ (count > inputCount ? "more than " + inputCount
+							: Integer.toString(count))
+					+ " values, the network needs " + inputCount + ".");
+		}
+		return true;
+	}
+
+	/**
+	 * Read rows of little-endian doubles and hand them to the writer in
+	 * blocks.
+	 * @param channel The channel to read.
+	 * @param writer The writer.
+	 * @return The number of rows read.
+	 */
+	private long readBinary(final ReadableByteChannel channel,
+			final Writer writer) throws IOException {
+		final int inputCount = this.network.getInputLayer().getNeuronCount();
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		double block[] = new double[this.blockSize * inputCount];
+		int filled = 0;
+		long rows = 0;
+
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			while (buffer.remaining() >= Double.BYTES) {
+				block[filled++] = buffer.getDouble();
+				if (filled == block.length) {
+					submit(block, this.blockSize, writer);
+					rows += this.blockSize;
+					block = new double[block.length];
+					filled = 0;
+				}
+			}
+			buffer.compact();
+		}
+
+		if ((buffer.position() != 0) || (filled % inputCount != 0)) {
+			throw new NeuralNetworkError(
+					"The binary input ends part way through a row.");
+		}
+		if (filled > 0) {
+			submit(block, filled / inputCount, writer);
+			rows += filled / inputCount;
+		}
+		return rows;
+	}
+
+	/**
+	 * Read CSV rows and hand them to the writer in blocks.
+	 * @param channel The channel to read.
+	 * @param writer The writer.
+	 * @return The number of rows read.
+	 */
+	private long readCsv(final ReadableByteChannel channel, final Writer writer)
+			throws IOException {
+		final int inputCount = this.network.getInputLayer().getNeuronCount();
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		byte line[] = new byte[256];
+		int length = 0;
+		long lineNumber = 0;
+		double block[] = new double[this.blockSize * inputCount];
+		int count = 0;
+		long rows = 0;
+		boolean more = true;
+
+		while (more) {
+			buffer.clear();
+			more = channel.read(buffer) != -1;
+			buffer.flip();
+			// at the end, a last line without a newline still counts
+			final boolean last = !more && (length > 0);
+			while (buffer.hasRemaining() || last) {
+				final byte b = buffer.hasRemaining() ? buffer.get() : (byte) '\n';
+				if (b != '\n') {
+					if (length == this.maxLineLength) {
+						throw new NeuralNetworkError("Line " + (lineNumber + 1)
+								+ " is longer than " + this.maxLineLength
+								+ " bytes.");
+					}
+					if (length == line.length) {
+						line = Arrays.copyOf(line, (int) Math.min(
+								(long) line.length * 2, this.maxLineLength));
+					}
+					line[length++] = b;
+					continue;
+				}
+
+				lineNumber++;
+				if (((lineNumber > 1) || !this.header)
+						&& parseLine(line, length, block, count * inputCount,
+								lineNumber)) {
+					count++;
+					if (count == this.blockSize) {
+						submit(block, count, writer);
+						rows += count;
+						block = new double[block.length];
+						count = 0;
+					}
+				}
+				length = 0;
+				if (!buffer.hasRemaining()) {
+					break;
+				}
+			}
+		}
+
+		if (count > 0) {
+			submit(block, count, writer);
+			rows += count;
+		}
+		return rows;
+	}
+
+	/**
+	 * Run a block through the network, on the pool if there is one, and
+	 * hand its outputs to the writer.
+	 * @param block The rows.
+	 * @param count The number of rows in the block.
+	 * @param writer The writer.
+	 */
+	private void submit(final double block[], final int count,
+			final Writer writer) throws IOException {
+		final int inputCount = this.network.getInputLayer().getNeuronCount();
+		final int outputCount = this.network.getOutputLayer().getNeuronCount();
+		final double input[] = (count * inputCount == block.length) ? block
+				: Arrays.copyOf(block, count * inputCount);
+
+		CompletableFuture<double[]> result;
+		if (this.pool == null) {
+			final double output[] = new double[count * outputCount];
+			this.network.computeOutputs(input, output);
+			result = CompletableFuture.completedFuture(output);
+		} else {
+			result = CompletableFuture.supplyAsync(() -> {
+				final double output[] = new double[count * outputCount];
+				this.network.computeOutputs(input, output);
+				return output;
+			}, this.pool);
+		}
+		writer.put(result);
+	}
+
+	/**
+	 * Writer: Writes the outputs of each block, in order, on its own
+	 * thread.  The thread is never interrupted, since an interrupt during
+	 * a write would close the channel.  It is stopped early by setting
+	 * aborted and queueing the end marker instead.
+	 */
+	private final class Writer implements Runnable {
+
+		/**
+		 * Put on the queue after the last block.
+		 */
+		private final CompletableFuture<double[]> end = CompletableFuture
+				.completedFuture(null);
+
+		/**
+		 * The blocks waiting to be written, in order.
+		 */
+		private final BlockingQueue<CompletableFuture<double[]>> queue;
+
+		/**
+		 * The channel to write.
+		 */
+		private final WritableByteChannel channel;
+
+		/**
+		 * Holds the bytes waiting to be written.
+		 */
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(
+				BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		/**
+		 * The thread doing the writing.
+		 */
+		private final Thread thread;
+
+		/**
+		 * Why the writer stopped, if it failed.
+		 */
+		private volatile Throwable failure;
+
+		/**
+		 * True once the writer has been told to stop without writing the
+		 * blocks that are left.
+		 */
+		private volatile boolean aborted;
+
+		/**
+		 * Construct the writer and start its thread.
+		 * @param channel The channel to write.
+		 */
+		Writer(final WritableByteChannel channel) {
+			this.channel = channel;
+			this.queue = new ArrayBlockingQueue<CompletableFuture<double[]>>(
+					ScoringPipeline.this.maxBlocks);
+			this.thread = Thread.ofPlatform().name("scoring-writer").start(this);
+		}
+
+		/**
+		 * Stop the writer without writing the blocks that are left, and
+		 * wait for its thread to end.  A block that is already being
+		 * written is finished first, so the channel is left open.
+		 */
+		void abort() {
+			this.aborted = true;
+			// only the reading thread queues blocks, so once the queue is
+			// cleared there is room for the end marker
+			this.queue.clear();
+			this.queue.offer(this.end);
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Wait for every block to be written.
+		 */
+		void finish() throws IOException {
+			put(this.end);
+			try {
+				this.thread.join();
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while writing.");
+			}
+			checkFailure();
+		}
+
+		/**
+		 * Queue a block, waiting while too many blocks are queued.
+		 * @param block The outputs of the block.
+		 */
+		void put(final CompletableFuture<double[]> block) throws IOException {
+			try {
+				while (!this.queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+					checkFailure();
+				}
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while reading.");
+			}
+			checkFailure();
+		}
+
+		/**
+		 * Write blocks until the last one has been written.
+		 */
+		public void run() {
+			try {
+				while (true) {
+					final CompletableFuture<double[]> block = this.queue.take();
+					if ((block == this.end) || this.aborted) {
+						break;
+					}
+					final double output[] = block.join();
+					if (this.aborted) {
+						break;
+					}
+					write(output);
+				}
+				if (!this.aborted) {
+					flush();
+				}
+			} catch (final Throwable t) {
+				this.failure = t;
+			}
+		}
+
+		/**
+		 * Throw the reason the writer failed, if it did.
+		 */
+		private void checkFailure() throws IOException {
+			Throwable t = this.failure;
+			if (t == null) {
+				return;
+			}
+			if (t instanceof CompletionException) {
+				t = t.getCause();
+			}
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			} else if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof InterruptedException) {
+				throw new InterruptedIOException("The writer was interrupted.");
+			}
+			throw new NeuralNetworkError(t);
+		}
+
+		/**
+		 * Write out the buffer.
+		 */
+		private void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		/**
+		 * Write the outputs of a block.
+		 * @param output The outputs, one row after another.
+		 */
+		private void write(final double output[]) throws IOException {
+			if (ScoringPipeline.this.outputFormat == Format.BINARY) {
+				for (int i = 0; i < output.length; i++) {
+					if (this.buffer.remaining() < Double.BYTES) {
+						flush();
+					}
+					this.buffer.putDouble(output[i]);
+				}
+				return;
+			}
+
+			final int outputCount = ScoringPipeline.this.network
+					.getOutputLayer().getNeuronCount();
+			final StringBuilder row = new StringBuilder();
+			for (int i = 0; i < output.length; i += outputCount) {
+				row.setLength(0);
+				for (int j = 0; j < outputCount; j++) {
+					if (j > 0) {
+						row.append(',');
+					}
+					row.append(output[i + j]);
+				}
+				row.append('\n');
+				final byte bytes[] = row.toString().getBytes(
+						StandardCharsets.ISO_8859_1);
+				if (this.buffer.remaining() < bytes.length) {
+					flush();
+				}
+				if (bytes.length > this.buffer.capacity()) {
+					final ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+					while (wrapped.hasRemaining()) {
+						this.channel.write(wrapped);
+					}
+				} else {
+					this.buffer.put(bytes);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.aurora.ai.neuralnetwork.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+
+/**
+ * InferenceClient: A connection to an InferenceServer.  Requests are
+ * sent one at a time, each waiting for its response.  A client must
+ * only be used by one thread at a time; open one client for each thread
+ * that makes requests.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class InferenceClient implements Closeable {
+
+	/**
+	 * The connection to the server.
+	 */
+	private final Socket socket;
+
+	/**
+	 * Reads responses.
+	 */
+	private final DataInputStream in;
+
+	/**
+	 * Writes requests.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * Connect to a server.
+	 * @param host The host the server is running on.
+	 * @param port The port the server is listening on.
+	 * @throws IOException If the connection could not be made.
+	 */
+	public InferenceClient(final String host, final int port)
+			throws IOException {
+		this.socket = new Socket(host, port);
+		try {
+			this.socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(this.socket
+					.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					this.socket.getOutputStream()));
+		} catch (final IOException e) {
+			this.socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Close the connection.
+	 * @throws IOException If the connection could not be closed.
+	 */
+	public void close() throws IOException {
+		this.socket.close();
+	}
+
+	/**
+	 * Ask the server for the outputs of the network for an input.
+	 * @param input The input pattern.
+	 * @return The outputs.
+	 * @throws IOException If the connection failed.
+	 * @throws NeuralNetworkError If the server could not compute the
+	 * outputs, for example because the input is the wrong size.
+	 */
+	public double[] compute(final double input[]) throws IOException {
+		this.out.writeInt(input.length);
+		for (int i = 0; i < input.length; i++) {
+			this.out.writeDouble(input[i]);
+		}
+		this.out.flush();
+
+		final int length = this.in.readInt();
+		if (length < 0) {
+			throw new NeuralNetworkError(this.in.readUTF());
+		}
+		final double result[] = new double[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = this.in.readDouble();
+		}
+		return result;
+	}
+}
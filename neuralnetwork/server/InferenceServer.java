@@ -0,0 +1,287 @@
+package com.aurora.ai.neuralnetwork.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
+
+/**
+ * InferenceServer: Serves the outputs of a neural network over TCP.
+ * Each connection is handled by its own virtual thread, and every
+ * request is passed to a MicroBatcher, so requests from many connections
+ * are run through the network together.
+ *
+ * A connection carries any number of requests, one after another, each
+ * answered before the next is read.  All values are written as by
+ * DataOutputStream, so they are big-endian:
+ *
+ *   request:  int n, followed by n doubles, the input pattern
+ *   response: int m, followed by m doubles, the outputs
+ *   error:    int -1, followed by the message as modified UTF-8
+ *
+ * The length of every request is checked against the input layer of
+ * the network before anything is allocated.  A request of the wrong
+ * length is skipped without being stored, and answered with an error.
+ * Any failure to compute the outputs is also answered with an error.
+ * After an error the connection stays open for the next request, except
+ * after a negative length, which closes it.
+ *
+ * By default the server only listens on the loopback address, where it
+ * can be tested with InferenceClient.  Other addresses must be asked for
+ * explicitly.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class InferenceServer implements Closeable {
+
+	/**
+	 * The longest error message sent, in characters.  Each character can
+	 * take up to three bytes, and writeUTF allows 65535.
+	 */
+	private static final int MAX_MESSAGE = 16384;
+
+	/**
+	 * The batcher that runs the requests.
+	 */
+	private final MicroBatcher batcher;
+
+	/**
+	 * True if the batcher was created by this server, and should be
+	 * closed with it.
+	 */
+	private final boolean ownsBatcher;
+
+	/**
+	 * The socket that connections are accepted on.
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Runs one virtual thread for each connection.
+	 */
+	private final ExecutorService connections = Executors
+			.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * The thread that accepts connections.
+	 */
+	private Thread acceptor;
+
+	/**
+	 * Construct a server for a network on the loopback address, with a
+	 * batcher that uses the default limits.  Call start to begin serving.
+	 * @param network The network to serve.
+	 * @param port The port, or 0 to use any free port.
+	 * @throws IOException If the port could not be opened.
+	 */
+	public InferenceServer(final NeuralNetwork network, final int port)
+			throws IOException {
+		this(new MicroBatcher(network), true, InetAddress.getLoopbackAddress(),
+				port);
+	}
+
+	/**
+	 * Construct a server that passes its requests to an existing batcher.
+	 * The batcher is not closed when the server is.  Call start to begin
+	 * serving.
+	 * @param batcher The batcher to use.
+	 * @param address The address to listen on.  This may not be null, a
+	 * server that should listen on every address must be given the
+	 * wildcard address.
+	 * @param port The port, or 0 to use any free port.
+	 * @throws IOException If the port could not be opened.
+	 */
+	public InferenceServer(final MicroBatcher batcher,
+			final InetAddress address, final int port) throws IOException {
+		this(batcher, false, checkAddress(address), port);
+	}
+
+	/**
+	 * Construct the server and open its socket.
+	 */
+	private InferenceServer(final MicroBatcher batcher,
+			final boolean ownsBatcher, final InetAddress address,
+			final int port) throws IOException {
+		this.batcher = batcher;
+		this.ownsBatcher = ownsBatcher;
+		try {
+			this.serverSocket = new ServerSocket(port, 0, address);
+		} catch (final IOException e) {
+			if (ownsBatcher) {
+				batcher.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Stop serving.  No new connections are accepted and open connections
+	 * are closed.
+	 * @throws IOException If the socket could not be closed.
+	 */
+	public void close() throws IOException {
+		try {
+			this.serverSocket.close();
+		} finally {
+			this.connections.shutdownNow();
+			if (this.ownsBatcher) {
+				this.batcher.close();
+			}
+		}
+	}
+
+	/**
+	 * Get the batcher that runs the requests.
+	 * @return The batcher.
+	 */
+	public MicroBatcher getBatcher() {
+		return this.batcher;
+	}
+
+	/**
+	 * Get the port the server is listening on.  This is useful when the
+	 * server was asked to use any free port.
+	 * @return The port.
+	 */
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Start accepting connections.
+	 */
+	public synchronized void start() {
+		if (this.acceptor != null) {
+			throw new NeuralNetworkError("The server has already been started.");
+		}
+		this.acceptor = Thread.ofVirtual().name("inference-acceptor").start(
+				this::accept);
+	}
+
+	/**
+	 * Accept connections until the socket is closed.
+	 */
+	private void accept() {
+		while (!this.serverSocket.isClosed()) {
+			try {
+				final Socket socket = this.serverSocket.accept();
+				this.connections.execute(() -> serve(socket));
+			} catch (final IOException e) {
+				// the socket was closed, or the connection failed before it
+				// was accepted
+			} catch (final RejectedExecutionException e) {
+				// the server is closing
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Answer the requests on a connection until it is closed.
+	 * @param socket The connection.
+	 */
+	private void serve(final Socket socket) {
+		try (socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(
+						socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(socket.getOutputStream()))) {
+			socket.setTcpNoDelay(true);
+			while (true) {
+				final int length;
+				try {
+					length = in.readInt();
+				} catch (final EOFException e) {
+					return;
+				}
+				if (length < 0) {
+					writeError(out, "Can't read an input of " + length
+							+ " values.");
+					return;
+				}
+				final int inputCount = this.batcher.getNetwork()
+						.getInputLayer().getNeuronCount();
+				if (length != inputCount) {
+					// read past the values rather than store them
+					in.skipNBytes((long) length * Double.BYTES);
+					writeError(out,
+							"Size mismatch: Can't compute outputs for input size="
+									+ length + " for input layer size="
+									+ inputCount);
+					continue;
+				}
+
+				final double input[] = new double[length];
+				for (int i = 0; i < length; i++) {
+					input[i] = in.readDouble();
+				}
+
+				try {
+					final double output[] = this.batcher.compute(input);
+					out.writeInt(output.length);
+					for (int i = 0; i < output.length; i++) {
+						out.writeDouble(output[i]);
+					}
+					out.flush();
+				} catch (final RuntimeException | Error e) {
+					writeError(out, message(e));
+				}
+			}
+		} catch (final IOException e) {
+			// the connection was closed by the client or by close
+		} catch (final InterruptedException e) {
+			// the server is closing
+		}
+	}
+
+	/**
+	 * Make sure that an address to listen on was given.
+	 * @param address The address.
+	 * @return The address.
+	 */
+	private static InetAddress checkAddress(final InetAddress address) {
+		if (address == null) {
+			throw new NeuralNetworkError(
+					"An address to listen on is required, use the wildcard address to listen on all of them.");
+		}
+		return address;
+	}
+
+	/**
+	 * Get the message to send for a failure.  Modified UTF-8 strings are
+	 * limited in length, so long messages are cut short.
+	 * @param t The failure.
+	 * @return The message.
+	 */
+	private static String message(final Throwable t) {
+		final String result = (t.getMessage() != null) ? t.getMessage() : t
+				.toString();
+		return (result.length() > MAX_MESSAGE) ? result.substring(0,
+				MAX_MESSAGE) : result;
+	}
+
+	/**
+	 * Write an error response.
+	 * @param out The stream to write to.
+	 * @param message The error message.
+	 */
+	private static void writeError(final DataOutputStream out,
+			final String message) throws IOException {
+		out.writeInt(-1);
+		out.writeUTF(message);
+		out.flush();
+	}
+}
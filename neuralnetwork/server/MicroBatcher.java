@@ -0,0 +1,340 @@
+package com.aurora.ai.neuralnetwork.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aurora.ai.neuralnetwork.exception.NeuralNetworkError;
+import com.aurora.ai.neuralnetwork.feedforward.NeuralNetwork;
+
+/**
+ * MicroBatcher: Collects single requests from many threads and runs them
+ * through a neural network together, as one batch.  A batched forward
+ * pass costs far less per pattern than running each pattern on its own,
+ * at the price of a short wait while the batch fills.
+ *
+ * A batch is run as soon as it holds maxBatch patterns, or maxDelay has
+ * passed since its first pattern arrived, whichever comes first.  The
+ * wait is also cut short when every request that has been submitted is
+ * already in the batch, so a lightly loaded batcher does not delay
+ * requests for nothing.
+ *
+ * Batches are run on a single thread owned by the batcher.  The network
+ * is only read, so it may be used elsewhere at the same time, but it
+ * must not be trained while the batcher is open.  If running a batch
+ * fails, even with an Error, every request in it fails with the same
+ * exception.  If the thread itself stops, the batcher is closed and
+ * every waiting request fails, so no caller is left waiting.
+ *
+ * @author Eke Stephen
+ * @version 1.0
+ */
+public class MicroBatcher implements Closeable {
+
+	/**
+	 * The default largest batch.
+	 */
+	public static final int DEFAULT_MAX_BATCH = 64;
+
+	/**
+	 * The default longest wait for a batch to fill, in microseconds.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 500;
+
+	/**
+	 * A pattern waiting to be run, along with where to put its result.
+	 */
+	private static final class Request {
+
+		/**
+		 * The input pattern.
+		 */
+		final double input[];
+
+		/**
+		 * Completed with the output of the network.
+		 */
+		final CompletableFuture<double[]> result = new CompletableFuture<double[]>();
+
+		/**
+		 * Construct a request.
+		 * @param input The input pattern.
+		 */
+		Request(final double input[]) {
+			this.input = input;
+		}
+	}
+
+	/**
+	 * The network to run.
+	 */
+	private final NeuralNetwork network;
+
+	/**
+	 * The largest number of patterns run together.
+	 */
+	private final int maxBatch;
+
+	/**
+	 * The longest time to wait for a batch to fill, in nanoseconds.
+	 */
+	private final long maxDelay;
+
+	/**
+	 * Requests that have not yet been taken into a batch.
+	 */
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+	/**
+	 * The number of requests submitted but not yet completed.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * Guards closed, so that no request is queued once closing starts.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * True once close has been called.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * The thread that runs the batches.
+	 */
+	private final Thread worker;
+
+	/**
+	 * Construct a batcher with the default limits.
+	 * @param network The network to run.
+	 */
+	public MicroBatcher(final NeuralNetwork network) {
+		this(network, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY,
+				TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Construct a batcher.
+	 * @param network The network to run.
+	 * @param maxBatch The largest number of patterns to run together.
+	 * @param maxDelay The longest time to wait for a batch to fill.
+	 * @param unit The unit of maxDelay.
+	 */
+	public MicroBatcher(final NeuralNetwork network, final int maxBatch,
+			final long maxDelay, final TimeUnit unit) {
+		if (maxBatch < 1) {
+			throw new NeuralNetworkError("The largest batch must be at least 1, not "
+					+ maxBatch + ".");
+		}
+		if (maxDelay < 0) {
+			throw new NeuralNetworkError("The delay can't be negative.");
+		}
+		this.network = network;
+		this.maxBatch = maxBatch;
+		this.maxDelay = unit.toNanos(maxDelay);
+		this.worker = Thread.ofPlatform().name("micro-batcher").daemon()
+				.start(this::run);
+	}
+
+	/**
+	 * Stop accepting requests.  Requests that have already been submitted
+	 * are still run, and this waits until they have been.
+	 */
+	public void close() {
+		synchronized (this.lock) {
+			this.closed = true;
+		}
+		boolean interrupted = false;
+		while (this.worker.isAlive()) {
+			try {
+				this.worker.join();
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Compute the output for an input, as part of the next batch.  This
+	 * blocks until the batch has been run, which suits virtual threads.
+	 * @param input The input pattern.
+	 * @return A new array holding the outputs.
+	 * @throws InterruptedException If the thread was interrupted while
+	 * waiting.
+	 */
+	public double[] compute(final double input[]) throws InterruptedException {
+		final int inputCount = this.network.getInputLayer().getNeuronCount();
+		if (input.length != inputCount) {
+			throw new NeuralNetworkError(
+					"Size mismatch: Can't compute outputs for input size="
+							+ input.length + " for input layer size="
+							+ inputCount);
+		}
+
+		final Request request = new Request(input);
+		synchronized (this.lock) {
+			if (this.closed) {
+				throw new NeuralNetworkError("The batcher has been closed.");
+			}
+			this.pending.incrementAndGet();
+			this.queue.add(request);
+		}
+
+		try {
+			return request.result.get();
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new NeuralNetworkError(e.getCause());
+		}
+	}
+
+	/**
+	 * Get the largest number of patterns run together.
+	 * @return The largest batch.
+	 */
+	public int getMaxBatch() {
+		return this.maxBatch;
+	}
+
+	/**
+	 * Get the longest time to wait for a batch to fill.
+	 * @param unit The unit to return the time in.
+	 * @return The longest wait.
+	 */
+	public long getMaxDelay(final TimeUnit unit) {
+		return unit.convert(this.maxDelay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the network this batcher runs.
+	 * @return The network.
+	 */
+	public NeuralNetwork getNetwork() {
+		return this.network;
+	}
+
+	/**
+	 * Fill a batch.  The first request is waited for without a limit, the
+	 * rest only until the deadline.
+	 * @param batch Holds the requests that were taken.
+	 * @return False if the batcher is closed and there is nothing left.
+	 */
+	private boolean fill(final List<Request> batch) throws InterruptedException {
+		Request request = null;
+		while (request == null) {
+			if (this.closed && this.queue.isEmpty()) {
+				return false;
+			}
+			request = this.queue.poll(10, TimeUnit.MILLISECONDS);
+		}
+		batch.add(request);
+
+		final long deadline = System.nanoTime() + this.maxDelay;
+		while (batch.size() < this.maxBatch) {
+			this.queue.drainTo(batch, this.maxBatch - batch.size());
+			// nobody else is waiting, so there is nothing to wait for
+			if ((batch.size() >= this.maxBatch)
+					|| (batch.size() >= this.pending.get())) {
+				break;
+			}
+			final long wait = deadline - System.nanoTime();
+			if (wait <= 0) {
+				break;
+			}
+			request = this.queue.poll(wait, TimeUnit.NANOSECONDS);
+			if (request == null) {
+				break;
+			}
+			batch.add(request);
+		}
+		return true;
+	}
+
+	/**
+	 * Run a batch and hand each request its result.
+	 * @param batch The requests.
+	 */
+	private void process(final List<Request> batch) {
+		final int count = batch.size();
+		try {
+			final int inputCount = this.network.getInputLayer()
+					.getNeuronCount();
+			final int outputCount = this.network.getOutputLayer()
+					.getNeuronCount();
+			final double input[] = new double[count * inputCount];
+			final double output[] = new double[count * outputCount];
+			for (int i = 0; i < count; i++) {
+				System.arraycopy(batch.get(i).input, 0, input, i * inputCount,
+						inputCount);
+			}
+
+			this.network.computeOutputs(input, output);
+
+			for (int i = 0; i < count; i++) {
+				final double result[] = new double[outputCount];
+				System.arraycopy(output, i * outputCount, result, 0,
+						outputCount);
+				batch.get(i).result.complete(result);
+			}
+		} catch (final Throwable t) {
+			// an Error, such as running out of memory, fails the batch but
+			// not the batcher
+			for (int i = 0; i < count; i++) {
+				batch.get(i).result.completeExceptionally(t);
+			}
+		} finally {
+			this.pending.addAndGet(-count);
+		}
+	}
+
+	/**
+	 * Run batches until the batcher is closed and every request is done.
+	 */
+	private void run() {
+		final List<Request> batch = new ArrayList<Request>(this.maxBatch);
+		try {
+			while (fill(batch)) {
+				process(batch);
+				batch.clear();
+			}
+		} catch (final InterruptedException e) {
+			fail(batch, new NeuralNetworkError("The batcher was interrupted."));
+		} catch (final Throwable t) {
+			fail(batch, t);
+			throw t;
+		}
+	}
+
+	/**
+	 * Close the batcher because its thread is stopping, and fail every
+	 * request that has not been completed.
+	 * @param batch The requests taken into the current batch.
+	 * @param cause Why the thread is stopping.
+	 */
+	private void fail(final List<Request> batch, final Throwable cause) {
+		synchronized (this.lock) {
+			this.closed = true;
+		}
+		for (final Request request : batch) {
+			request.result.completeExceptionally(cause);
+		}
+		Request request;
+		while ((request = this.queue.poll()) != null) {
+			request.result.completeExceptionally(cause);
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.aurora.ai.neuralnetwork.som;
 
 import com.aurora.ai.neuralnetwork.matrix.Matrix;
 import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.VectorView;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
 
 /**
  * NormalizeInput: Input into a Self Organizing Map must be normalized.
@@ -59,6 +61,26 @@ public class NormalizeInput {
 		this.inputMatrix = this.createInputMatrix(input, this.synth);
 	}
 
+	/**
+	 * Normalize an input array into a scratch matrix taken from a
+	 * workspace, rather than a new matrix.  The input matrix can only be
+	 * used until the workspace is released.
+	 * 
+	 * @param input
+	 *            The input array to be normalized.
+	 * @param type
+	 *            What type of normalization to use.
+	 * @param workspace
+	 *            The workspace to take the input matrix from.
+	 */
+	public NormalizeInput(final double input[], final NormalizationType type,
+			final Workspace workspace) {
+		this.type = type;
+		calculateFactors(input);
+		this.inputMatrix = fillInputMatrix(workspace.matrix(1,
+				input.length + 1), input, this.synth);
+	}
+
 	/**
 	 * Create an input matrix that has enough space to hold the extra synthetic
 	 * input.
@@ -71,7 +93,23 @@ public class NormalizeInput {
 	 */
 	protected Matrix createInputMatrix(final double pattern[],
 			final double extra) {
-		final Matrix result = new Matrix(1, pattern.length + 1);
+		return fillInputMatrix(new Matrix(1, pattern.length + 1), pattern,
+				extra);
+	}
+
+	/**
+	 * Copy the input pattern and the synthetic input into a matrix.
+	 * 
+	 * @param result
+	 *            The matrix to fill, with one more column than the pattern.
+	 * @param pattern
+	 *            The input pattern.
+	 * @param extra
+	 *            The synthetic input.
+	 * @return The filled matrix.
+	 */
+	private static Matrix fillInputMatrix(final Matrix result,
+			final double pattern[], final double extra) {
 		for (int i = 0; i < pattern.length; i++) {
 			result.set(0, i, pattern[i]);
 		}
@@ -114,8 +152,7 @@ public class NormalizeInput {
 	 */
 	protected void calculateFactors(final double input[]) {
 
-		final Matrix inputMatrix = Matrix.createColumnMatrix(input);
-		double len = MatrixMath.vectorLength(inputMatrix);
+		double len = MatrixMath.vectorLength(new VectorView(input));
 		len = Math.max(len, SelfOrganizingMap.VERYSMALL);
 		final int numInputs = input.length;
 
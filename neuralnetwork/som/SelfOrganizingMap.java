@@ -4,6 +4,8 @@ import java.io.Serializable;
 
 import com.aurora.ai.neuralnetwork.matrix.Matrix;
 import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.VectorView;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
 import com.aurora.ai.neuralnetwork.som.NormalizeInput.NormalizationType;
 
 /**
@@ -130,9 +132,15 @@ public class SelfOrganizingMap implements Serializable {
 	 * @return The winning neuron.
 	 */
 	public int winner(final double input[]) {
-		final NormalizeInput normalizedInput = new NormalizeInput(input,
-				this.normalizationType);
-		return winner(normalizedInput);
+		final Workspace workspace = Workspace.current();
+		final int mark = workspace.mark();
+		try {
+			final NormalizeInput normalizedInput = new NormalizeInput(input,
+					this.normalizationType, workspace);
+			return winner(normalizedInput);
+		} finally {
+			workspace.release(mark);
+		}
 	}
 
 	/**
@@ -144,11 +152,12 @@ public class SelfOrganizingMap implements Serializable {
 	public int winner(final NormalizeInput input) {
 		int win = 0;
 
+		final VectorView inputVector = input.getInputMatrix().getRowView(0);
+
 		double biggest = Double.MIN_VALUE;
 		for (int i = 0; i < this.outputNeuronCount; i++) {
-			final Matrix optr = this.outputWeights.getRow(i);
-			this.output[i] = MatrixMath
-					.dotProduct(input.getInputMatrix(), optr)
+			final VectorView optr = this.outputWeights.getRowView(i);
+			this.output[i] = MatrixMath.dotProduct(inputVector, optr)
 					* input.getNormfac();
 			
 			this.output[i] = (this.output[i]+1.0)/2.0;
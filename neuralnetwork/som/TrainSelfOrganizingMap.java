@@ -2,6 +2,8 @@ package com.aurora.ai.neuralnetwork.som;
 
 import com.aurora.ai.neuralnetwork.matrix.Matrix;
 import com.aurora.ai.neuralnetwork.matrix.MatrixMath;
+import com.aurora.ai.neuralnetwork.matrix.VectorView;
+import com.aurora.ai.neuralnetwork.matrix.Workspace;
 
 /**
  * TrainSelfOrganizingMap: Implements an unsupervised training algorithm for use
@@ -118,7 +120,7 @@ public class TrainSelfOrganizingMap {
 		this.totalError = 1.0;
 
 		for (int tset = 0; tset < train.length; tset++) {
-			final Matrix dptr = Matrix.createColumnMatrix(train[tset]);
+			final VectorView dptr = new VectorView(train[tset]);
 			if (MatrixMath.vectorLength(dptr) < SelfOrganizingMap.VERYSMALL) {
 				throw (new RuntimeException(
 						"Multiplicative normalization has null training case"));
@@ -195,50 +197,60 @@ public class TrainSelfOrganizingMap {
 		this.globalError = 0.0;
 		// loop through all training sets to determine correction
 		for (int tset = 0; tset < this.train.length; tset++) {
-			final NormalizeInput input = new NormalizeInput(this.train[tset],
-					this.som.getNormalizationType());
-			final int best = this.som.winner(input);
-
-			this.won[best]++;
-			final Matrix wptr = this.som.getOutputWeights().getRow(best);
-
-			double length = 0.0;
-			double diff;
-
-			for (int i = 0; i < this.inputNeuronCount; i++) {
-				diff = this.train[tset][i] * input.getNormfac()
-						- wptr.get(0, i);
+			// the normalized input is only needed for this training set.  The
+			// workspace is fetched again for each one, since releasing it can
+			// lend it to another thread.
+			final Workspace workspace = Workspace.current();
+			final int mark = workspace.mark();
+			try {
+				final NormalizeInput input = new NormalizeInput(this.train[tset],
+						this.som.getNormalizationType(), workspace);
+				final int best = this.som.winner(input);
+
+				this.won[best]++;
+				final VectorView wptr = this.som.getOutputWeights().getRowView(
+						best);
+
+				double length = 0.0;
+				double diff;
+
+				for (int i = 0; i < this.inputNeuronCount; i++) {
+					diff = this.train[tset][i] * input.getNormfac()
+							- wptr.get(i);
+					length += diff * diff;
+					if (this.learnMethod == LearningMethod.SUBTRACTIVE) {
+						this.correc.add(best, i, diff);
+					} else {
+						this.work.set(0, i, this.learnRate * this.train[tset][i]
+								* input.getNormfac() + wptr.get(i));
+					}
+				}
+				diff = input.getSynth() - wptr.get(this.inputNeuronCount);
 				length += diff * diff;
-				if (this.learnMethod == LearningMethod.SUBTRACTIVE) {
-					this.correc.add(best, i, diff);
+				if (this.learnMethod ==LearningMethod.SUBTRACTIVE) {
+					this.correc.add(best, this.inputNeuronCount, diff);
 				} else {
-					this.work.set(0, i, this.learnRate * this.train[tset][i]
-							* input.getNormfac() + wptr.get(0, i));
+					this.work
+							.set(0, this.inputNeuronCount, this.learnRate
+									* input.getSynth()
+									+ wptr.get(this.inputNeuronCount));
 				}
-			}
-			diff = input.getSynth() - wptr.get(0, this.inputNeuronCount);
-			length += diff * diff;
-			if (this.learnMethod ==LearningMethod.SUBTRACTIVE) {
-				this.correc.add(best, this.inputNeuronCount, diff);
-			} else {
-				this.work
-						.set(0, this.inputNeuronCount, this.learnRate
-								* input.getSynth()
-								+ wptr.get(0, this.inputNeuronCount));
-			}
 
-			if (length > this.globalError) {
-				this.globalError = length;
-			}
+				if (length > this.globalError) {
+					this.globalError = length;
+				}
 
-			if (this.learnMethod == LearningMethod.ADDITIVE) {
-				normalizeWeight(this.work, 0);
-				for (int i = 0; i <= this.inputNeuronCount; i++) {
-					this.correc.add(best, i, this.work.get(0, i)
-							- wptr.get(0, i));
+				if (this.learnMethod == LearningMethod.ADDITIVE) {
+					normalizeWeight(this.work, 0);
+					for (int i = 0; i <= this.inputNeuronCount; i++) {
+						this.correc.add(best, i, this.work.get(0, i)
+								- wptr.get(i));
+					}
 				}
-			}
 
+			} finally {
+				workspace.release(mark);
+			}
 		}
 
 		this.globalError = Math.sqrt(this.globalError);
@@ -265,28 +277,34 @@ public class TrainSelfOrganizingMap {
 			}
 		}
 
-		final NormalizeInput input = new NormalizeInput(this.train[which],
-				this.som.getNormalizationType());
-		best = this.som.winner(input);
-		final double output[] = this.som.getOutput();
+		final Workspace workspace = Workspace.current();
+		final int mark = workspace.mark();
+		try {
+			final NormalizeInput input = new NormalizeInput(this.train[which],
+					this.som.getNormalizationType(), workspace);
+			best = this.som.winner(input);
+			final double output[] = this.som.getOutput();
 
-		dist = Double.MIN_VALUE;
-		int i = this.outputNeuronCount;
-		while ((i--) > 0) {
-			if (this.won[i] != 0) {
-				continue;
+			dist = Double.MIN_VALUE;
+			int i = this.outputNeuronCount;
+			while ((i--) > 0) {
+				if (this.won[i] != 0) {
+					continue;
+				}
+				if (output[i] > dist) {
+					dist = output[i];
+					which = i;
+				}
 			}
-			if (output[i] > dist) {
-				dist = output[i];
-				which = i;
+
+			for (int j = 0; j < input.getInputMatrix().getCols(); j++) {
+				outputWeights.set(which, j, input.getInputMatrix().get(0,j));
 			}
-		}
 
-		for (int j = 0; j < input.getInputMatrix().getCols(); j++) {
-			outputWeights.set(which, j, input.getInputMatrix().get(0,j));
+			normalizeWeight(outputWeights, which);
+		} finally {
+			workspace.release(mark);
 		}
-
-		normalizeWeight(outputWeights, which);
 	}
 
 	/**
@@ -359,7 +377,7 @@ public class TrainSelfOrganizingMap {
 	 */
 	protected void normalizeWeight(final Matrix matrix, final int row) {
 
-		double len = MatrixMath.vectorLength(matrix.getRow(row));
+		double len = MatrixMath.vectorLength(matrix.getRowView(row));
 		len = Math.max(len, SelfOrganizingMap.VERYSMALL);
 
 		len = 1.0 / len;
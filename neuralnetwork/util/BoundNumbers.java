@@ -44,4 +44,14 @@ public class BoundNumbers {
 	public static double exp(final double d) {
 		return bound(Math.exp(d));
 	}
+
+	/**
+	 * A bounded version of Math.exp at single precision.  The bounds fit
+	 * in a float, so the result is always finite.
+	 * @param d What to calculate.
+	 * @return The result.
+	 */
+	public static float exp(final float d) {
+		return (float) bound(Math.exp(d));
+	}
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.aurora.ai.neuralnetwork.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -32,7 +34,7 @@ public class SerializeObject {
 		FileInputStream fis = null;
 		ObjectInputStream in = null;
 		fis = new FileInputStream(filename);
-		in = new ObjectInputStream(fis);
+		in = new ObjectInputStream(new BufferedInputStream(fis));
 		object = (Serializable) in.readObject();
 		in.close();
 		return object;
@@ -50,7 +52,7 @@ public class SerializeObject {
 		ObjectOutputStream out = null;
 
 		fos = new FileOutputStream(filename);
-		out = new ObjectOutputStream(fos);
+		out = new ObjectOutputStream(new BufferedOutputStream(fos));
 		out.writeObject(object);
 		out.close();
 	}